@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.assets;
+
+import com.phyzicsz.rocket.symbol.render.AssetCatalog;
+import com.phyzicsz.rocket.symbol.render.AssetPack;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles the symbol repository into an {@link AssetPack} at build time.
+ * <p>
+ * Every PNG of the repository is decoded once and written run-length encoded
+ * to the pack, which the build puts on the class path as
+ * {@code /symbols.pack}. The renderer picks the pack up from there, so a
+ * deployment with this module never decodes a PNG component at run time. The
+ * pack records the same {@link AssetCatalog#getVersion() version} the
+ * renderer computes for the repository it is deployed with.
+ * <p>
+ * The build fails if an asset cannot be decoded, rather than shipping a pack
+ * the renderer would have to fall back from.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class AssetCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssetCompiler.class);
+
+    /**
+     * Resource path the repository is served from by the renderer.
+     */
+    private static final String BASE_PATH = "/symbols";
+
+    private AssetCompiler() {
+    }
+
+    /**
+     * Compiles an asset pack.
+     *
+     * @param args the symbol repository directory and the pack file to write.
+     * @throws IOException if an asset cannot be read or the pack cannot be
+     * written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            logger.error("usage: AssetCompiler <symbol directory> <pack file>");
+            throw new IllegalArgumentException("expected the symbol directory and the pack file");
+        }
+        Path symbols = Paths.get(args[0]);
+        Path target = Paths.get(args[1]);
+
+        long start = System.nanoTime();
+        int count = compile(symbols, target);
+        logger.info("compiled {} symbol components into {} ({} bytes) in {} ms", count, target,
+                Files.size(target), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Decodes every asset of a symbol repository and writes them to a run-length
+     * encoded asset pack.
+     *
+     * @param symbols directory holding the symbol repository.
+     * @param target the pack file to write. Missing parent directories are
+     * created.
+     * @return the number of assets written.
+     * @throws IOException if the repository cannot be read, an asset cannot be
+     * decoded or the pack cannot be written.
+     */
+    public static int compile(Path symbols, Path target) throws IOException {
+        if (!Files.isDirectory(symbols)) {
+            throw new IOException("symbol repository not found: " + symbols);
+        }
+        AssetCatalog catalog = AssetCatalog.scan(BASE_PATH, symbols);
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        try (AssetPack.Writer writer = new AssetPack.Writer(target, catalog.getVersion(), true)) {
+            for (Map.Entry<String, Long> asset : catalog.getHashes().entrySet()) {
+                writer.add(asset.getKey(), asset.getValue(), decode(symbols.resolve(asset.getKey())));
+            }
+            writer.commit();
+            return writer.getCount();
+        }
+    }
+
+    private static BufferedImage decode(Path file) throws IOException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("not an image: " + file);
+        }
+        return image;
+    }
+}
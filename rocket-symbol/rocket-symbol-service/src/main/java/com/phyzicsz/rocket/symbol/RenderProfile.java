@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol;
+
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
+import com.phyzicsz.rocket.symbol.common.SymbolServiceProperties;
+import com.phyzicsz.rocket.symbol.render.RenderKey;
+import com.phyzicsz.rocket.symbol.render.SymbolImage;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders symbols with a set of properties of its own, such as the fill
+ * color of one tenant, and keeps the images in a PNG cache with its own quota.
+ * Profiles are created by {@link RocketSymbolService#createProfile(String, long)}
+ * and share the renderer and the off-heap and persistent tiers of the
+ * service.
+ * <p>
+ * Only images in custom colors go to the profile cache; with the default
+ * colors the profile renders the same images as everyone else and uses the
+ * shared cache of the service. Requests through a profile are not counted
+ * towards the hot set.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class RenderProfile {
+
+    private final RocketSymbolService service;
+    private final String name;
+    private final SymbolCache<RenderKey, byte[]> pngCache;
+    private final SymbolServiceProperties props = new SymbolServiceProperties();
+
+    RenderProfile(RocketSymbolService service, String name, SymbolCache<RenderKey, byte[]> pngCache) {
+        this.service = service;
+        this.name = name;
+        this.pngCache = pngCache;
+    }
+
+    public RenderProfile withShowIcon(final Boolean value) {
+        props.put(SymbolServiceProperties.SHOW_ICON, value);
+        return this;
+    }
+
+    public RenderProfile withShowFrame(final Boolean value) {
+        props.put(SymbolServiceProperties.SHOW_FRAME, value);
+        return this;
+    }
+
+    public RenderProfile withShowFill(final Boolean value) {
+        props.put(SymbolServiceProperties.SHOW_FILL, value);
+        return this;
+    }
+
+    public RenderProfile withFillColor(final Color value) {
+        props.put(SymbolServiceProperties.COLOR, value);
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BufferedImage asBufferedImage(final String symbolCode) throws IOException {
+        return service.getRenderer().createIcon(renderKey(symbolCode));
+    }
+
+    /**
+     * Returns a read-only image of a symbol. Unlike
+     * {@link #asBufferedImage(String)} this does not copy cached symbols.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @return the symbol.
+     * @throws IOException if the symbol code is not recognized.
+     */
+    public SymbolImage asSymbolImage(final String symbolCode) throws IOException {
+        return service.getRenderer().createSymbolImage(renderKey(symbolCode));
+    }
+
+    public byte[] asPng(final String symbolCode) throws IOException {
+        return encodedPng(symbolCode).clone();
+    }
+
+    /**
+     * Writes the PNG encoding of a symbol to a stream. Unlike
+     * {@link #asPng(String)} this does not copy cached images.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @param out stream to write the PNG to. The stream is not closed.
+     * @throws IOException if the symbol code is not recognized or the stream
+     * cannot be written.
+     */
+    public void writePng(final String symbolCode, final OutputStream out) throws IOException {
+        out.write(encodedPng(symbolCode));
+    }
+
+    /**
+     * Returns the entity tag of the PNG encoding of a symbol, without
+     * rendering it.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @return the quoted entity tag.
+     * @throws IOException if the symbol code is not recognized.
+     * @see RocketSymbolService#getETag(String)
+     */
+    public String getETag(final String symbolCode) throws IOException {
+        return service.getRenderer().getETag(renderKey(symbolCode));
+    }
+
+    /**
+     * Indicates whether a client already holds the current PNG encoding of a
+     * symbol.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @param ifNoneMatch value of the {@code If-None-Match} request header.
+     * May be null.
+     * @return true if one of the listed tags matches the current one.
+     * @throws IOException if the symbol code is not recognized.
+     * @see RocketSymbolService#notModified(String, String)
+     */
+    public boolean notModified(final String symbolCode, final String ifNoneMatch) throws IOException {
+        return ifNoneMatch != null && RocketSymbolService.matchesETag(ifNoneMatch, getETag(symbolCode));
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the PNG cache of the
+     * profile. Requests served from the shared cache are not included.
+     *
+     * @return a snapshot of the profile PNG cache statistics.
+     */
+    public CacheStats getPngCacheStats() {
+        return pngCache.stats();
+    }
+
+    SymbolCache<RenderKey, byte[]> getPngCache() {
+        return pngCache;
+    }
+
+    private RenderKey renderKey(final String symbolCode) throws IOException {
+        return service.getRenderer().getRenderKey(symbolCode, props);
+    }
+
+    private byte[] encodedPng(final String symbolCode) throws IOException {
+        return service.encodedPng(service.pngCacheFor(props, pngCache), renderKey(symbolCode));
+    }
+
+    @Override
+    public String toString() {
+        return "RenderProfile{" + "name=" + name + ", pngCache=" + pngCache + '}';
+    }
+}
@@ -15,30 +15,219 @@
  */
 package com.phyzicsz.rocket.symbol;
 
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.cache.HotKeyRecorder;
+import com.phyzicsz.rocket.symbol.cache.MemoryGovernor;
+import com.phyzicsz.rocket.symbol.cache.OffHeapSymbolStore;
+import com.phyzicsz.rocket.symbol.cache.PersistentSymbolStore;
+import com.phyzicsz.rocket.symbol.cache.SingleFlight;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
 import com.phyzicsz.rocket.symbol.common.SymbologyConstants;
+import com.phyzicsz.rocket.symbol.render.AssetPack;
 import com.phyzicsz.rocket.symbol.render.MilStdSymbolRenderer;
+import com.phyzicsz.rocket.symbol.render.RenderConfiguration;
+import com.phyzicsz.rocket.symbol.render.RenderKey;
+import com.phyzicsz.rocket.symbol.render.SymbolKey;
+import com.phyzicsz.rocket.symbol.render.SymbolImage;
 import com.phyzicsz.rocket.symbol.common.SymbolServiceProperties;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import javax.imageio.ImageIO;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
  * @author phyzicsz <phyzics.z@gmail.com>
  */
-public class RocketSymbolService {
+public class RocketSymbolService implements Closeable {
 
-    private final MilStdSymbolRenderer renderer = new MilStdSymbolRenderer();
+    private static final Logger logger = LoggerFactory.getLogger(RocketSymbolService.class);
+
+    /**
+     * Size of a single slab of the off-heap PNG store.
+     */
+    private static final int OFF_HEAP_SLAB_SIZE = 1024 * 1024;
+
+    /**
+     * Number of symbol codes tracked for the hot set, as a multiple of the
+     * number written.
+     */
+    private static final int HOT_SET_TRACKING_FACTOR = 4;
+
+    /**
+     * Domain and type of the statistics MXBeans; the name is added per
+     * service.
+     */
+    private static final String MXBEAN_TYPE = "com.phyzicsz.rocket.symbol:type=RocketSymbolService";
+
+    private final RenderConfiguration config;
+    private final MilStdSymbolRenderer renderer;
 //    private final KVStore kv = new KVStore();
     private final SymbolServiceProperties props = new SymbolServiceProperties();
 
+    /**
+     * Encoded PNG images keyed by render key, so symbol codes that render to
+     * the same image share one entry. The arrays are never handed out
+     * directly.
+     */
+    private final SymbolCache<RenderKey, byte[]> pngCache;
+
+    /**
+     * Optional tier of encoded PNG images held in direct memory, keyed by the
+     * canonical form of the render key. When enabled it takes the place of
+     * the on-heap PNG caches, which then only hold images too large for it.
+     * Null when disabled.
+     */
+    private final OffHeapSymbolStore offHeapPngStore;
+
+    /**
+     * Optional disk-backed tier of encoded PNG images that survives restarts,
+     * keyed by the canonical form of the render key. Null when disabled.
+     */
+    private final PersistentSymbolStore persistentPngStore;
+
+    /**
+     * Renders and encodes in progress, keyed by render key.
+     */
+    private final SingleFlight<RenderKey, byte[]> encodeFlights = new SingleFlight<>();
+
+    /**
+     * Render profiles by name.
+     */
+    private final Map<String, RenderProfile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * Request counts per symbol code, or null unless a hot set file is
+     * configured.
+     */
+    private final HotKeyRecorder<SymbolKey> hotSetRecorder;
+    private final Path hotSetPath;
+    private final int hotSetSize;
+    private final ScheduledExecutorService hotSetWriter;
+
+    /**
+     * Name of the statistics MXBean, or null unless it is registered.
+     */
+    private final ObjectName mxBeanName;
+
     public RocketSymbolService() {
+        this(new RenderConfiguration());
+    }
+
+    public RocketSymbolService(final RenderConfiguration config) {
+        this.config = config;
+        this.renderer = new MilStdSymbolRenderer(config);
+        this.pngCache = new SymbolCache<>("png", config.getPngCacheBytes(), config.getPngCacheEntries(),
+                (key, bytes) -> bytes.length, config.isFrequencyAdmission());
+        renderer.getMemoryGovernor().register(MilStdSymbolRenderer.ENCODED_TIER_VALUE, pngCache);
+        this.offHeapPngStore = config.getOffHeapPngCacheBytes() > 0
+                ? new OffHeapSymbolStore("offHeapPng", config.getOffHeapPngCacheBytes(), OFF_HEAP_SLAB_SIZE)
+                : null;
+        this.persistentPngStore = config.getPersistentPngCachePath() != null
+                ? openPersistentStore(config)
+                : null;
+
+        Path snapshotPath = config.getSnapshotPath();
+        if (snapshotPath != null && Files.isRegularFile(snapshotPath)) {
+            try {
+                importSnapshot(snapshotPath);
+            } catch (IOException ex) {
+                logger.error("unable to import snapshot {}", snapshotPath, ex);
+            }
+        }
+
+        Path warmupPath = config.getWarmupPath();
+        if (warmupPath != null && Files.isRegularFile(warmupPath)) {
+            try {
+                warmUp(warmupPath);
+            } catch (IOException ex) {
+                logger.error("unable to warm up from {}", warmupPath, ex);
+            }
+        }
+
+        this.hotSetPath = config.getHotSetPath();
+        this.hotSetSize = config.getHotSetSize();
+        if (hotSetPath != null) {
+            // Track more symbol codes than are written, so codes on the edge of the hot set can work their way in.
+            this.hotSetRecorder = new HotKeyRecorder<>(HOT_SET_TRACKING_FACTOR * hotSetSize);
+            this.hotSetWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "symbol-hot-set-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            long interval = config.getHotSetIntervalSeconds();
+            hotSetWriter.scheduleWithFixedDelay(this::writeHotSetPeriodically, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.hotSetRecorder = null;
+            this.hotSetWriter = null;
+        }
 
+        this.mxBeanName = config.getJmxName() != null ? registerMXBean(config.getJmxName()) : null;
+    }
+
+    /**
+     * Registers the statistics MXBean. A name that cannot be registered is
+     * logged and skipped rather than preventing the service from starting.
+     */
+    private ObjectName registerMXBean(final String name) {
+        try {
+            ObjectName objectName = new ObjectName(MXBEAN_TYPE + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServiceStatistics(this), objectName);
+            return objectName;
+        } catch (JMException ex) {
+            logger.error("unable to register symbol service MXBean {}", name, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the persistent PNG tier, versioned by the asset set. The store
+     * never evicts, so it is emptied whenever the symbol assets change rather
+     * than filling up with images no storage key can reach any more. A cache
+     * that cannot be opened is logged and skipped rather than preventing the
+     * service from starting.
+     */
+    private PersistentSymbolStore openPersistentStore(final RenderConfiguration config) {
+        Path path = config.getPersistentPngCachePath();
+        try {
+            long assetVersion = renderer.getAssetCatalog().getVersion();
+            return PersistentSymbolStore.open("persistentPng", path, config.getPersistentPngCacheBytes(),
+                    assetVersion);
+        } catch (IOException ex) {
+            logger.error("unable to open persistent PNG cache {}", path, ex);
+            return null;
+        }
     }
 
     public RocketSymbolService withShowIcon(final Boolean value) {
@@ -63,46 +252,711 @@ public class RocketSymbolService {
     }
 
     public BufferedImage asBufferedImage(final String symbolCode) throws IOException {
-        return renderer.createIcon(symbolCode, props);
+        return renderer.createIcon(requestKey(symbolCode));
+    }
+
+    /**
+     * Returns a read-only image of a symbol. Unlike
+     * {@link #asBufferedImage(String)} this does not copy cached symbols.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @return the symbol.
+     * @throws IOException if the symbol code is not recognized.
+     */
+    public SymbolImage asSymbolImage(final String symbolCode) throws IOException {
+        return renderer.createSymbolImage(requestKey(symbolCode));
     }
 
     public byte[] asPng(final String symbolCode) throws IOException {
-        BufferedImage image = renderer.createIcon(symbolCode, props);
+        return encodedPng(symbolCode).clone();
+    }
 
-        byte[] bytes;
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "png", baos);
-            baos.flush();
-            bytes = baos.toByteArray();
-        }
-        return bytes;
+    /**
+     * Writes the PNG encoding of a symbol to a stream. Unlike
+     * {@link #asPng(String)} this does not copy cached images.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @param out stream to write the PNG to. The stream is not closed.
+     * @throws IOException if the symbol code is not recognized or the stream
+     * cannot be written.
+     */
+    public void writePng(final String symbolCode, final OutputStream out) throws IOException {
+        out.write(encodedPng(symbolCode));
     }
-    
-    public void pngToFile(final String symbolCode, final String path) throws IOException {
-        BufferedImage image = renderer.createIcon(symbolCode, props);
 
-        byte[] bytes;
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "png", baos);
-            baos.flush();
-            bytes = baos.toByteArray();
+    /**
+     * Writes the PNG encoding of a symbol to a channel. When the off-heap or
+     * persistent tier holds the image it is written straight from direct or
+     * mapped memory without being copied to the heap.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @param channel channel to write the PNG to. The channel is not closed.
+     * @return the number of bytes written.
+     * @throws IOException if the symbol code is not recognized or the channel
+     * cannot be written.
+     */
+    public long writePng(final String symbolCode, final WritableByteChannel channel) throws IOException {
+        RenderKey key = requestKey(symbolCode);
+        String storageKey = storageKey(key);
+        if (offHeapPngStore != null) {
+            long written = offHeapPngStore.transferTo(storageKey, channel);
+            if (written >= 0) {
+                return written;
+            }
         }
-        
+        if (persistentPngStore != null) {
+            long written = persistentPngStore.transferTo(storageKey, channel);
+            if (written >= 0) {
+                return written;
+            }
+        }
+
+        byte[] bytes = pngCache.getIfPresent(key);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes != null ? bytes : timedLoadPng(pngCache, key, storageKey));
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return written;
+    }
+
+    /**
+     * Returns the entity tag of the PNG encoding of a symbol, without
+     * rendering it. The tag is strong: it only changes when the encoded bytes
+     * would, for example when one of the assets of the symbol is updated.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @return the quoted entity tag, ready for an {@code ETag} header.
+     * @throws IOException if the symbol code is not recognized.
+     */
+    public String getETag(final String symbolCode) throws IOException {
+        return renderer.getETag(requestKey(symbolCode));
+    }
+
+    /**
+     * Indicates whether a client already holds the current PNG encoding of a
+     * symbol, so it can be answered with 304 Not Modified instead of the
+     * image. Nothing is rendered or encoded.
+     *
+     * @param symbolCode SIDC identifier for the symbol.
+     * @param ifNoneMatch value of the {@code If-None-Match} request header:
+     * {@code *} or a list of entity tags. May be null.
+     * @return true if one of the listed tags matches the current one.
+     * @throws IOException if the symbol code is not recognized.
+     */
+    public boolean notModified(final String symbolCode, final String ifNoneMatch) throws IOException {
+        return ifNoneMatch != null && matchesETag(ifNoneMatch, getETag(symbolCode));
+    }
+
+    public void pngToFile(final String symbolCode, final String path) throws IOException {
         Path filepath = Paths.get(path);
-        Files.write(filepath, bytes);
+        Files.write(filepath, encodedPng(symbolCode));
     }
-    
+
     public void pngToFile(final String symbolCode, final Path path) throws IOException {
-        BufferedImage image = renderer.createIcon(symbolCode, props);
+        Files.write(path, encodedPng(symbolCode));
+    }
+
+    /**
+     * Renders a list of symbols into the caches, in parallel on all available
+     * processors, and waits until all of them are done. Symbols are rendered
+     * with the options listed for them in the file, most requested first.
+     * Symbol codes that cannot be rendered are skipped. Warming up does not
+     * count as requests for the {@link #getTopSymbols(int) top symbols}.
+     *
+     * @param path warm-up file listing the symbol codes; see
+     * {@link WarmupFile}.
+     * @return the number of symbols rendered.
+     * @throws IOException if the file cannot be read or the warm-up is
+     * interrupted.
+     */
+    public int warmUp(final Path path) throws IOException {
+        Map<SymbolKey, Long> symbols = WarmupFile.read(path);
+        long start = System.nanoTime();
 
-        byte[] bytes;
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "png", baos);
-            baos.flush();
-            bytes = baos.toByteArray();
+        AtomicInteger warmed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>(symbols.size());
+        for (SymbolKey symbol : symbols.keySet()) {
+            tasks.add(() -> {
+                try {
+                    encodedPng(pngCache, renderer.lookupRenderKey(symbol.getSidc(), symbol.toParams()));
+                    warmed.incrementAndGet();
+                } catch (IOException | RuntimeException ex) {
+                    failed.incrementAndGet();
+                    logger.debug("unable to warm up {}", symbol, ex);
+                }
+                return null;
+            });
         }
-        
-        Files.write(path, bytes);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "symbol-warmup");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            pool.invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("warm-up interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        logger.info("warmed up {} symbols from {} in {} ms on {} threads, {} failed", warmed.get(), path,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), threads, failed.get());
+        return warmed.get();
+    }
+
+    /**
+     * Creates a render profile: a set of properties, typically a color
+     * override, with a PNG cache of its own.
+     * <p>
+     * Symbols a profile renders in custom colors are kept in its own cache,
+     * so one tenant requesting many colors cannot evict the images everyone
+     * else shares. The profile caches are shrunk before the shared cache when
+     * the memory budget is exceeded. Symbols rendered in the default colors
+     * are still served from the shared cache.
+     *
+     * @param name unique name of the profile.
+     * @param pngCacheBytes maximum number of bytes of encoded PNG images held
+     * by the profile.
+     * @return the new profile.
+     * @throws IllegalArgumentException if a profile of that name exists or
+     * the size is not positive.
+     */
+    public RenderProfile createProfile(final String name, final long pngCacheBytes) {
+        if (pngCacheBytes <= 0) {
+            logger.error("profile PNG cache size must be positive: {}", pngCacheBytes);
+            throw new IllegalArgumentException("profile PNG cache size must be positive");
+        }
+        SymbolCache<RenderKey, byte[]> cache = new SymbolCache<>("png-" + name, pngCacheBytes,
+                config.getPngCacheEntries(), (key, bytes) -> bytes.length, config.isFrequencyAdmission());
+        RenderProfile profile = new RenderProfile(this, name, cache);
+        if (profiles.putIfAbsent(name, profile) != null) {
+            logger.error("render profile already exists: {}", name);
+            throw new IllegalArgumentException("render profile already exists: " + name);
+        }
+        renderer.getMemoryGovernor().register(MilStdSymbolRenderer.ENCODED_TIER_VALUE - 1, cache);
+        return profile;
+    }
+
+    /**
+     * Returns a render profile.
+     *
+     * @param name name of the profile.
+     * @return the profile, or null if there is no profile of that name.
+     */
+    public RenderProfile getProfile(final String name) {
+        return profiles.get(name);
+    }
+
+    /**
+     * Returns all render profiles.
+     *
+     * @return an unmodifiable view of the profiles.
+     */
+    public Collection<RenderProfile> getProfiles() {
+        return Collections.unmodifiableCollection(profiles.values());
+    }
+
+    /**
+     * Takes a snapshot of the shared PNG cache, or of the off-heap tier when
+     * it is enabled. Only images of recently requested symbol codes are
+     * included, since the snapshot lists the symbol codes that render to each
+     * image. The PNG caches of render profiles are not included.
+     *
+     * @return the snapshot.
+     * @throws IOException if the symbol repository cannot be scanned.
+     */
+    public SymbolSnapshot takeSnapshot() throws IOException {
+        Map<RenderKey, List<SymbolKey>> symbols = new HashMap<>();
+        renderer.forEachRenderKey((symbolKey, key) ->
+                symbols.computeIfAbsent(key, k -> new ArrayList<>()).add(symbolKey));
+        Map<RenderKey, byte[]> images = new LinkedHashMap<>();
+        pngCache.forEach((key, bytes) -> {
+            if (symbols.containsKey(key)) {
+                images.put(key, bytes);
+            }
+        });
+        if (offHeapPngStore != null) {
+            for (RenderKey key : symbols.keySet()) {
+                if (!images.containsKey(key)) {
+                    byte[] bytes = offHeapPngStore.peek(renderer.getStorageKey(key));
+                    if (bytes != null) {
+                        images.put(key, bytes);
+                    }
+                }
+            }
+        }
+
+        List<SymbolSnapshot.Entry> entries = new ArrayList<>(images.size());
+        for (Map.Entry<RenderKey, byte[]> image : images.entrySet()) {
+            entries.add(new SymbolSnapshot.Entry(renderer.getStorageKey(image.getKey()),
+                    symbols.get(image.getKey()), image.getValue()));
+        }
+        return new SymbolSnapshot(renderer.getAssetCatalog().getVersion(), entries);
+    }
+
+    /**
+     * Writes a snapshot of the shared PNG cache to a stream.
+     *
+     * @param out stream to write to. The stream is not closed.
+     * @return the number of images written.
+     * @throws IOException if the stream cannot be written.
+     * @see #takeSnapshot()
+     */
+    public int exportSnapshot(final OutputStream out) throws IOException {
+        SymbolSnapshot snapshot = takeSnapshot();
+        snapshot.write(out);
+        return snapshot.getEntries().size();
+    }
+
+    /**
+     * Writes a snapshot of the shared PNG cache to a file. The file is
+     * replaced atomically, so a node starting at the same time never reads a
+     * partially written snapshot.
+     *
+     * @param path the file to write.
+     * @return the number of images written.
+     * @throws IOException if the file cannot be written.
+     * @see #takeSnapshot()
+     */
+    public int exportSnapshot(final Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        int count;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            count = exportSnapshot(out);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Loads the images of a snapshot into the PNG caches. Every listed symbol
+     * code is resolved again; an image is only used if it still has the same
+     * storage key, so images drawn from assets that changed since the
+     * snapshot was taken are skipped. Resolving the symbol codes does not
+     * count as requests for the {@link #getTopSymbols(int) top symbols}.
+     *
+     * @param snapshot the snapshot.
+     * @return the number of images loaded.
+     * @throws IOException if the symbol repository cannot be scanned.
+     */
+    public int importSnapshot(final SymbolSnapshot snapshot) throws IOException {
+        long start = System.nanoTime();
+        int loaded = 0;
+        int stale = 0;
+        for (SymbolSnapshot.Entry entry : snapshot.getEntries()) {
+            boolean used = false;
+            for (SymbolKey symbol : entry.getSymbols()) {
+                RenderKey key;
+                try {
+                    key = renderer.lookupRenderKey(symbol.getSidc(), symbol.toParams());
+                } catch (IOException ex) {
+                    continue;
+                }
+                String storageKey = renderer.getStorageKey(key);
+                if (storageKey.equals(entry.getStorageKey())) {
+                    cacheInMemory(pngCache, key, storageKey, entry.getPng());
+                    used = true;
+                }
+            }
+            if (used) {
+                loaded++;
+            } else {
+                stale++;
+            }
+        }
+        renderer.getMemoryGovernor().enforce();
+
+        long assetVersion = renderer.getAssetCatalog().getVersion();
+        logger.info("imported {} images from a snapshot of asset version {} (current {}) in {} ms, {} stale",
+                loaded, Long.toHexString(snapshot.getAssetVersion()), Long.toHexString(assetVersion),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), stale);
+        return loaded;
+    }
+
+    /**
+     * Reads a snapshot from a stream and loads its images into the PNG
+     * caches.
+     *
+     * @param in stream to read from. It should be buffered; it is not closed.
+     * @return the number of images loaded.
+     * @throws IOException if the stream cannot be read or does not hold a
+     * snapshot.
+     * @see #importSnapshot(SymbolSnapshot)
+     */
+    public int importSnapshot(final InputStream in) throws IOException {
+        return importSnapshot(SymbolSnapshot.read(in));
+    }
+
+    /**
+     * Reads a snapshot file in one sequential pass and loads its images into
+     * the PNG caches.
+     *
+     * @param path the file to read.
+     * @return the number of images loaded.
+     * @throws IOException if the file cannot be read or does not hold a
+     * snapshot.
+     * @see #importSnapshot(SymbolSnapshot)
+     */
+    public int importSnapshot(final Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return importSnapshot(in);
+        }
+    }
+
+    /**
+     * Returns the most requested symbols since the service started, weighted
+     * towards recent requests. Each symbol carries the properties it was
+     * requested with.
+     *
+     * @param n the maximum number of symbols to return.
+     * @return the symbols and their request counts, most requested first.
+     * Empty unless a hot set file is configured.
+     */
+    public List<Map.Entry<SymbolKey, Long>> getHotSet(final int n) {
+        return hotSetRecorder != null ? hotSetRecorder.top(n) : Collections.emptyList();
+    }
+
+    /**
+     * Writes the most requested symbols to the configured hot set file now.
+     * Does nothing unless a hot set file is configured.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void saveHotSet() throws IOException {
+        if (hotSetRecorder != null) {
+            WarmupFile.write(hotSetPath, hotSetRecorder.top(hotSetSize));
+        }
+    }
+
+    private void writeHotSetPeriodically() {
+        try {
+            saveHotSet();
+            hotSetRecorder.decay();
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("unable to write hot set to {}", hotSetPath, ex);
+        }
+    }
+
+    /**
+     * Indicates the number of renders and PNG encodes saved because a request
+     * joined an identical one already in progress: requests for a PNG that
+     * joined an encode, and requests that joined a render in the renderer,
+     * such as concurrent {@link #asBufferedImage(String)} calls.
+     *
+     * @return the number of coalesced requests.
+     */
+    public long getCoalescedRenderCount() {
+        return encodeFlights.getCoalescedCount() + renderer.getCoalescedRenderCount();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the encoded PNG cache.
+     *
+     * @return a snapshot of the PNG cache statistics.
+     */
+    public CacheStats getPngCacheStats() {
+        return pngCache.stats();
+    }
+
+    /**
+     * Returns the statistics of every cache layer: those of the renderer, the
+     * shared PNG cache, the PNG caches of the render profiles and the
+     * off-heap and persistent tiers when enabled.
+     *
+     * @return snapshots of the cache statistics, from the components up to
+     * the encoded images.
+     */
+    public List<CacheStats> getCacheStats() {
+        List<CacheStats> stats = renderer.getCacheStats();
+        stats.add(pngCache.stats());
+        for (RenderProfile profile : profiles.values()) {
+            stats.add(profile.getPngCacheStats());
+        }
+        if (offHeapPngStore != null) {
+            stats.add(offHeapPngStore.stats());
+        }
+        if (persistentPngStore != null) {
+            stats.add(persistentPngStore.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the most requested symbol codes and parameters, through the
+     * service and its profiles alike, weighted towards recent requests.
+     *
+     * @param n the maximum number of entries to return.
+     * @return the symbols and their request counts, most requested first.
+     * Empty if the counting is disabled.
+     */
+    public List<Map.Entry<SymbolKey, Long>> getTopSymbols(final int n) {
+        return renderer.getTopSymbols(n);
+    }
+
+    /**
+     * Returns the statistics of the off-heap PNG tier.
+     *
+     * @return a snapshot of the off-heap tier statistics, or null if the tier
+     * is disabled.
+     */
+    public CacheStats getOffHeapPngCacheStats() {
+        return offHeapPngStore != null ? offHeapPngStore.stats() : null;
+    }
+
+    /**
+     * Returns the statistics of the persistent PNG tier.
+     *
+     * @return a snapshot of the persistent tier statistics, or null if the
+     * tier is disabled.
+     */
+    public CacheStats getPersistentPngCacheStats() {
+        return persistentPngStore != null ? persistentPngStore.stats() : null;
+    }
+
+    /**
+     * Scans the symbol repository for updated assets and drops every cached
+     * image drawn from one of them, including those of the render profiles. Images in the off-heap and persistent
+     * tiers are keyed by asset hash and are simply no longer found.
+     *
+     * @return the paths of the changed assets.
+     * @throws IOException if the repository cannot be read.
+     */
+    public Set<String> refreshAssets() throws IOException {
+        Set<String> changed = renderer.refreshAssets();
+        if (!changed.isEmpty()) {
+            pngCache.invalidateIf(key -> key.dependsOnAny(changed));
+            for (RenderProfile profile : profiles.values()) {
+                profile.getPngCache().invalidateIf(key -> key.dependsOnAny(changed));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the number of bytes held by each in-memory cache of the service
+     * and its renderer, in the order they are shrunk under memory pressure,
+     * followed by the size of the asset pack if one is mapped. The pack is
+     * outside of the heap and never shrunk.
+     *
+     * @return the cache names mapped to the number of bytes they hold.
+     */
+    public Map<String, Long> getMemoryBreakdown() {
+        Map<String, Long> breakdown = renderer.getMemoryGovernor().breakdown();
+        AssetPack pack = renderer.getAssetPack();
+        if (pack != null) {
+            breakdown.put("assetPack", pack.getByteSize());
+        }
+        return breakdown;
+    }
+
+    MemoryGovernor getMemoryGovernor() {
+        return renderer.getMemoryGovernor();
+    }
+
+    /**
+     * Writes the index of the persistent PNG tier, so a restarted service can
+     * open it without scanning. Does nothing if the tier is disabled.
+     *
+     * @throws IOException if the index cannot be written.
+     */
+    public void flush() throws IOException {
+        if (persistentPngStore != null) {
+            persistentPngStore.flush();
+        }
+    }
+
+    /**
+     * Stops recording the hot set and writes it one last time, then flushes and
+     * releases the persistent PNG tier, stops listening for heap pressure and
+     * unregisters the statistics MXBean.
+     * The service remains usable but no longer adds images to the persistent
+     * tier.
+     *
+     * @throws IOException if the hot set or the index cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (hotSetWriter != null) {
+            hotSetWriter.shutdownNow();
+            saveHotSet();
+        }
+        renderer.close();
+        if (mxBeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mxBeanName);
+            } catch (JMException ex) {
+                logger.warn("unable to unregister symbol service MXBean {}", mxBeanName, ex);
+            }
+        }
+        if (persistentPngStore != null) {
+            persistentPngStore.close();
+        }
+    }
+
+    /**
+     * Compares the entity tags of an {@code If-None-Match} header with a tag,
+     * using the weak comparison the header calls for.
+     */
+    static boolean matchesETag(final String ifNoneMatch, final String eTag) {
+        String header = ifNoneMatch.trim();
+        if (header.equals("*")) {
+            return true;
+        }
+
+        int i = 0;
+        while (i < header.length()) {
+            char c = header.charAt(i);
+            if (c == ',' || c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            if (header.startsWith("W/", i)) {
+                i += 2;
+            }
+            if (i >= header.length() || header.charAt(i) != '"') {
+                return false;
+            }
+            int end = header.indexOf('"', i + 1);
+            if (end < 0) {
+                return false;
+            }
+            if (header.regionMatches(i, eTag, 0, eTag.length()) && end + 1 - i == eTag.length()) {
+                return true;
+            }
+            i = end + 1;
+        }
+        return false;
+    }
+
+    MilStdSymbolRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Returns the cache that holds the images of a profile: its own for
+     * custom colors, the shared one otherwise.
+     */
+    SymbolCache<RenderKey, byte[]> pngCacheFor(final SymbolServiceProperties profileProps,
+            final SymbolCache<RenderKey, byte[]> profileCache) {
+        return profileProps.get(SymbolServiceProperties.COLOR) != null ? profileCache : pngCache;
+    }
+
+    /**
+     * Resolves the render key of a requested symbol and counts the request
+     * towards the hot set.
+     */
+    private RenderKey requestKey(final String symbolCode) throws IOException {
+        RenderKey key = renderer.getRenderKey(symbolCode, props);
+        if (hotSetRecorder != null) {
+            hotSetRecorder.record(SymbolKey.of(symbolCode, props));
+        }
+        return key;
+    }
+
+    /**
+     * Returns the PNG encoding of a symbol rendered with the current
+     * properties. The returned array may be shared with the cache and must not
+     * be modified.
+     */
+    private byte[] encodedPng(final String symbolCode) throws IOException {
+        return encodedPng(pngCache, requestKey(symbolCode));
+    }
+
+    /**
+     * Returns the PNG encoding of a symbol, looking it up in the off-heap tier
+     * if it is enabled, then in the given PNG cache: the shared one or that of
+     * a render profile. Images served from the off-heap tier are not copied
+     * into the PNG cache.
+     */
+    byte[] encodedPng(final SymbolCache<RenderKey, byte[]> cache, final RenderKey key) throws IOException {
+        String storageKey = storageKey(key);
+        if (offHeapPngStore != null) {
+            byte[] bytes = offHeapPngStore.get(storageKey);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+
+        byte[] bytes = cache.getIfPresent(key);
+        return bytes != null ? bytes : timedLoadPng(cache, key, storageKey);
+    }
+
+    /**
+     * Loads a symbol missing from the in-memory tiers and counts the time
+     * towards the load penalty of the PNG cache, including time spent waiting
+     * for a render started by another request.
+     */
+    private byte[] timedLoadPng(final SymbolCache<RenderKey, byte[]> cache, final RenderKey key,
+            final String storageKey) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = loadPng(cache, key, storageKey);
+        cache.recordLoad(System.nanoTime() - start);
+        return bytes;
+    }
+
+    /**
+     * Looks up a symbol missing from the in-memory tiers in the persistent
+     * tier, and renders it if the tier does not hold it.
+     */
+    private byte[] loadPng(final SymbolCache<RenderKey, byte[]> cache, final RenderKey key,
+            final String storageKey) throws IOException {
+        if (persistentPngStore != null) {
+            byte[] bytes = persistentPngStore.get(storageKey);
+            if (bytes != null) {
+                cacheInMemory(cache, key, storageKey, bytes);
+                return bytes;
+            }
+        }
+
+        // Concurrent misses for the same symbol share one render and encode. The result is cached before the
+        // flight ends, so callers arriving later find it in the cache. A caller that joined a flight started for
+        // another cache adds the result to its own cache afterwards, unless the result went to the shared off-heap
+        // tier.
+        boolean[] rendering = {false};
+        byte[] encoded = encodeFlights.execute(key, () -> {
+            rendering[0] = true;
+            byte[] rendered = renderer.createSymbolImage(key).encodePng();
+            cacheInMemory(cache, key, storageKey, rendered);
+            renderer.getMemoryGovernor().enforce();
+            if (persistentPngStore != null) {
+                persistentPngStore.put(storageKey, rendered);
+            }
+            return rendered;
+        });
+        if (!rendering[0] && offHeapPngStore == null) {
+            cache.put(key, encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * Keeps an image in the off-heap tier if it is enabled, otherwise or if
+     * the image is too large for the tier in the given PNG cache.
+     */
+    private void cacheInMemory(final SymbolCache<RenderKey, byte[]> cache, final RenderKey key,
+            final String storageKey, final byte[] bytes) {
+        if (offHeapPngStore == null || !offHeapPngStore.put(storageKey, bytes)) {
+            cache.put(key, bytes);
+        }
+    }
+
+    /**
+     * Returns the key of a symbol in the off-heap and persistent tiers, or
+     * null if neither is enabled.
+     */
+    private String storageKey(final RenderKey key) throws IOException {
+        return offHeapPngStore != null || persistentPngStore != null ? renderer.getStorageKey(key) : null;
     }
 
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol;
+
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of a {@link RocketSymbolService}, registered with the
+ * platform MBean server when the service is configured with a JMX name.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public interface RocketSymbolServiceMXBean {
+
+    /**
+     * Returns the statistics of every cache layer of the service and its
+     * renderer.
+     *
+     * @return snapshots of the cache statistics.
+     */
+    List<CacheStats> getCacheStats();
+
+    /**
+     * Returns the number of bytes held by each in-memory cache.
+     *
+     * @return the cache names mapped to their weight in bytes.
+     */
+    Map<String, Long> getMemoryBreakdown();
+
+    /**
+     * Returns the most requested symbol codes and parameters.
+     *
+     * @return the symbols mapped to their request counts.
+     */
+    Map<String, Long> getTopSymbols();
+
+    long getCoalescedRenderCount();
+
+    long getMemoryBudget();
+
+    long getReleasedBytes();
+}
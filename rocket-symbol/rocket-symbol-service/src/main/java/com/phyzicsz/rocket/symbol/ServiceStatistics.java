@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol;
+
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.render.SymbolKey;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MXBean of a symbol service. It only reads the statistics the service
+ * keeps anyway, so registering it costs nothing on the request path.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+final class ServiceStatistics implements RocketSymbolServiceMXBean {
+
+    /**
+     * Number of symbols reported by {@link #getTopSymbols()}.
+     */
+    private static final int TOP_SYMBOLS = 20;
+
+    private final RocketSymbolService service;
+
+    ServiceStatistics(RocketSymbolService service) {
+        this.service = service;
+    }
+
+    @Override
+    public List<CacheStats> getCacheStats() {
+        return service.getCacheStats();
+    }
+
+    @Override
+    public Map<String, Long> getMemoryBreakdown() {
+        return service.getMemoryBreakdown();
+    }
+
+    @Override
+    public Map<String, Long> getTopSymbols() {
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<SymbolKey, Long> entry : service.getTopSymbols(TOP_SYMBOLS)) {
+            top.put(entry.getKey().toString(), entry.getValue());
+        }
+        return top;
+    }
+
+    @Override
+    public long getCoalescedRenderCount() {
+        return service.getCoalescedRenderCount();
+    }
+
+    @Override
+    public long getMemoryBudget() {
+        return service.getMemoryGovernor().getBudget();
+    }
+
+    @Override
+    public long getReleasedBytes() {
+        return service.getMemoryGovernor().getReleasedBytes();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol;
+
+import com.phyzicsz.rocket.symbol.common.SymbolServiceProperties;
+import com.phyzicsz.rocket.symbol.render.SymbolKey;
+import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A portable copy of the encoded PNG cache of a {@link RocketSymbolService},
+ * used to start new nodes with the images a running node already rendered.
+ * <p>
+ * A snapshot lists encoded images together with the storage key they were
+ * rendered under and the symbol codes and parameters that requested them.
+ * The storage key carries the content hashes of the assets of the image, so
+ * a node importing the snapshot resolves every symbol code again and keeps
+ * only images whose storage key still matches: images drawn from assets that
+ * changed since are dropped, all others are used even if the symbol
+ * repository as a whole has a different version.
+ * <p>
+ * The binary layout, written with {@link DataOutputStream}, is
+ * <pre>
+ * int magic | int format | long assetVersion | int entryCount
+ * entry: UTF storageKey | short symbolCount | symbol... | int pngLength | png
+ * symbol: UTF sidc | byte flags | int argb
+ * </pre>
+ * so a snapshot is read in one sequential pass.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class SymbolSnapshot {
+
+    private static final int MAGIC = 0x52534e50;
+    private static final int FORMAT = 1;
+
+    private static final int SHOW_FILL = 1;
+    private static final int SHOW_FRAME = 2;
+    private static final int SHOW_ICON = 4;
+    private static final int HAS_COLOR = 8;
+
+    private final long assetVersion;
+    private final List<Entry> entries;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param assetVersion version of the symbol repository the images were
+     * rendered from.
+     * @param entries the images.
+     */
+    public SymbolSnapshot(long assetVersion, List<Entry> entries) {
+        this.assetVersion = assetVersion;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Indicates the version of the symbol repository the snapshot was taken
+     * from.
+     *
+     * @return the asset set version.
+     */
+    public long getAssetVersion() {
+        return assetVersion;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Writes the snapshot.
+     *
+     * @param out stream to write to. The stream is flushed but not closed.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void write(final OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT);
+        data.writeLong(assetVersion);
+        data.writeInt(entries.size());
+        for (Entry entry : entries) {
+            data.writeUTF(entry.storageKey);
+            data.writeShort(entry.symbols.size());
+            for (SymbolKey symbol : entry.symbols) {
+                writeSymbol(data, symbol);
+            }
+            data.writeInt(entry.png.length);
+            data.write(entry.png);
+        }
+        data.flush();
+    }
+
+    private static void writeSymbol(DataOutputStream data, SymbolKey symbol) throws IOException {
+        int flags = 0;
+        if (symbol.isShowFill()) {
+            flags |= SHOW_FILL;
+        }
+        if (symbol.isShowFrame()) {
+            flags |= SHOW_FRAME;
+        }
+        if (symbol.isShowIcon()) {
+            flags |= SHOW_ICON;
+        }
+        Color color = symbol.getColor();
+        if (color != null) {
+            flags |= HAS_COLOR;
+        }
+        data.writeUTF(symbol.getSidc());
+        data.writeByte(flags);
+        data.writeInt(color != null ? color.getRGB() : 0);
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param in stream to read from. It should be buffered; it is not closed.
+     * @return the snapshot.
+     * @throws IOException if the stream cannot be read or does not hold a
+     * snapshot of a supported format.
+     */
+    public static SymbolSnapshot read(final InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not a symbol snapshot");
+        }
+        int format = data.readInt();
+        if (format != FORMAT) {
+            throw new IOException("unsupported symbol snapshot format " + format);
+        }
+
+        long assetVersion = data.readLong();
+        int count = data.readInt();
+        List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, 1 << 16)));
+        for (int i = 0; i < count; i++) {
+            String storageKey = data.readUTF();
+            int symbolCount = data.readUnsignedShort();
+            List<SymbolKey> symbols = new ArrayList<>(symbolCount);
+            for (int j = 0; j < symbolCount; j++) {
+                symbols.add(readSymbol(data));
+            }
+            int length = data.readInt();
+            if (length < 0) {
+                throw new IOException("corrupt symbol snapshot");
+            }
+            byte[] png = new byte[length];
+            data.readFully(png);
+            entries.add(new Entry(storageKey, symbols, png));
+        }
+        return new SymbolSnapshot(assetVersion, entries);
+    }
+
+    private static SymbolKey readSymbol(DataInputStream data) throws IOException {
+        String sidc = data.readUTF();
+        int flags = data.readUnsignedByte();
+        int argb = data.readInt();
+
+        SymbolServiceProperties params = new SymbolServiceProperties();
+        params.put(SymbolServiceProperties.SHOW_FILL, (flags & SHOW_FILL) != 0);
+        params.put(SymbolServiceProperties.SHOW_FRAME, (flags & SHOW_FRAME) != 0);
+        params.put(SymbolServiceProperties.SHOW_ICON, (flags & SHOW_ICON) != 0);
+        if ((flags & HAS_COLOR) != 0) {
+            params.put(SymbolServiceProperties.COLOR, new Color(argb, true));
+        }
+        return SymbolKey.of(sidc, params);
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolSnapshot{" + "assetVersion=" + assetVersion + ", entries=" + entries.size() + '}';
+    }
+
+    /**
+     * One encoded image and the symbols that requested it.
+     */
+    public static final class Entry {
+
+        private final String storageKey;
+        private final List<SymbolKey> symbols;
+        private final byte[] png;
+
+        /**
+         * Creates an entry.
+         *
+         * @param storageKey storage key the image was rendered under.
+         * @param symbols symbol codes and parameters that render to the image.
+         * At most 65535 are kept.
+         * @param png the encoded image. The array is not copied.
+         */
+        public Entry(String storageKey, List<SymbolKey> symbols, byte[] png) {
+            this.storageKey = Objects.requireNonNull(storageKey, "storageKey is null");
+            List<SymbolKey> kept = symbols.size() > 0xffff ? symbols.subList(0, 0xffff) : symbols;
+            this.symbols = Collections.unmodifiableList(new ArrayList<>(kept));
+            this.png = Objects.requireNonNull(png, "png is null");
+        }
+
+        public String getStorageKey() {
+            return storageKey;
+        }
+
+        public List<SymbolKey> getSymbols() {
+            return symbols;
+        }
+
+        /**
+         * Returns the encoded image. The array is shared and must not be
+         * modified.
+         *
+         * @return the PNG bytes.
+         */
+        public byte[] getPng() {
+            return png;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol;
+
+import com.phyzicsz.rocket.symbol.common.SymbolServiceProperties;
+import com.phyzicsz.rocket.symbol.render.SymbolKey;
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and writes lists of symbols used to warm the caches of a
+ * {@link RocketSymbolService}.
+ * <p>
+ * A warm-up file is plain text with one symbol code per line, optionally
+ * followed by whitespace and a request count. Blank lines and lines starting
+ * with {@code #} are ignored, so the file can be written by hand:
+ * <pre>
+ * # friendly ground units
+ * SFGPUCI----D---  1520
+ * SFGPUCA--------;nofill;color=ff00ff00   860
+ * SHGPUCI--------
+ * </pre>
+ * A symbol code may be followed by the render options it was requested with,
+ * each introduced by a semicolon: {@code nofill}, {@code noframe},
+ * {@code noicon} and {@code color=} with the ARGB value of the color in
+ * hexadecimal. Options that are not listed take their default value. Files
+ * written by the service contain the most requested symbols of the running
+ * node with their options and counts, so the next start can warm up with the
+ * real hot set.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class WarmupFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmupFile.class);
+
+    private WarmupFile() {
+    }
+
+    /**
+     * Reads a warm-up file. Counts of symbols listed more than once are added
+     * up, and symbols without a count are counted once. Lines with an unknown
+     * option are skipped.
+     *
+     * @param path the file to read.
+     * @return the symbols and their counts, most requested first.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Map<SymbolKey, Long> read(final Path path) throws IOException {
+        Map<SymbolKey, Long> counts = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("[\\s,]+");
+                SymbolKey symbol = parseSymbol(fields[0]);
+                if (symbol == null) {
+                    logger.warn("{}:{}: invalid symbol '{}'", path, lineNumber, fields[0]);
+                    continue;
+                }
+                long count = 1;
+                if (fields.length > 1) {
+                    try {
+                        count = Long.parseLong(fields[1]);
+                    } catch (NumberFormatException ex) {
+                        logger.warn("{}:{}: invalid count '{}'", path, lineNumber, fields[1]);
+                    }
+                }
+                counts.merge(symbol, Math.max(1, count), Long::sum);
+            }
+        }
+
+        List<Map.Entry<SymbolKey, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<SymbolKey, Long> sorted = new LinkedHashMap<>();
+        for (Map.Entry<SymbolKey, Long> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return sorted;
+    }
+
+    /**
+     * Writes a warm-up file. The file is replaced atomically, so a reader never
+     * sees a partially written list.
+     *
+     * @param path the file to write.
+     * @param entries the symbols and their counts, in the order they should be
+     * written.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(final Path path, final List<Map.Entry<SymbolKey, Long>> entries)
+            throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write("# symbol code;options, request count");
+            writer.newLine();
+            for (Map.Entry<SymbolKey, Long> entry : entries) {
+                writer.write(formatSymbol(entry.getKey()));
+                writer.write(' ');
+                writer.write(Long.toString(entry.getValue()));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Formats a symbol as its symbol code followed by the options that differ
+     * from their defaults.
+     */
+    static String formatSymbol(final SymbolKey symbol) {
+        StringBuilder sb = new StringBuilder(symbol.getSidc());
+        if (!symbol.isShowFill()) {
+            sb.append(";nofill");
+        }
+        if (!symbol.isShowFrame()) {
+            sb.append(";noframe");
+        }
+        if (!symbol.isShowIcon()) {
+            sb.append(";noicon");
+        }
+        Color color = symbol.getColor();
+        if (color != null) {
+            sb.append(";color=").append(String.format("%08x", color.getRGB()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a symbol written by {@link #formatSymbol(SymbolKey)}.
+     *
+     * @return the symbol, or null if an option is not recognized.
+     */
+    static SymbolKey parseSymbol(final String field) {
+        String[] parts = field.split(";");
+        SymbolServiceProperties params = new SymbolServiceProperties();
+        for (int i = 1; i < parts.length; i++) {
+            String option = parts[i];
+            switch (option) {
+                case "nofill":
+                    params.put(SymbolServiceProperties.SHOW_FILL, false);
+                    break;
+                case "noframe":
+                    params.put(SymbolServiceProperties.SHOW_FRAME, false);
+                    break;
+                case "noicon":
+                    params.put(SymbolServiceProperties.SHOW_ICON, false);
+                    break;
+                default:
+                    if (!option.startsWith("color=")) {
+                        return null;
+                    }
+                    try {
+                        int argb = Integer.parseUnsignedInt(option.substring("color=".length()), 16);
+                        params.put(SymbolServiceProperties.COLOR, new Color(argb, true));
+                    } catch (NumberFormatException ex) {
+                        return null;
+                    }
+            }
+        }
+        return SymbolKey.of(parts[0], params);
+    }
+}
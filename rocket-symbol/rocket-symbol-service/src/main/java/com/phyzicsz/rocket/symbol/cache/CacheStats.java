@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+/**
+ * Immutable point-in-time snapshot of the statistics of a {@link SymbolCache}.
+ * <p>
+ * Besides hits and misses a snapshot counts the loads that followed a miss
+ * and the time they took, and the entries that left the cache by
+ * {@link RemovalCause}.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class CacheStats {
+
+    private final String name;
+    private final long hitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long totalLoadTime;
+    private final long sizeEvictionCount;
+    private final long budgetEvictionCount;
+    private final long explicitRemovalCount;
+    private final long size;
+    private final long weight;
+    private final long maximumWeight;
+
+    public CacheStats(String name, long hitCount, long missCount, long evictionCount,
+            long size, long weight, long maximumWeight) {
+        this(name, hitCount, missCount, 0, 0, evictionCount, 0, 0, size, weight, maximumWeight);
+    }
+
+    /**
+     * Creates a snapshot with load times and evictions by cause.
+     *
+     * @param name name of the cache.
+     * @param hitCount number of lookups served from the cache.
+     * @param missCount number of lookups not served from the cache.
+     * @param loadCount number of values loaded after a miss.
+     * @param totalLoadTime time spent loading, in nanoseconds.
+     * @param sizeEvictionCount number of {@link RemovalCause#SIZE} evictions.
+     * @param budgetEvictionCount number of {@link RemovalCause#BUDGET}
+     * evictions.
+     * @param explicitRemovalCount number of {@link RemovalCause#EXPLICIT}
+     * removals.
+     * @param size number of entries.
+     * @param weight total weight of the entries.
+     * @param maximumWeight maximum total weight.
+     */
+    public CacheStats(String name, long hitCount, long missCount, long loadCount, long totalLoadTime,
+            long sizeEvictionCount, long budgetEvictionCount, long explicitRemovalCount,
+            long size, long weight, long maximumWeight) {
+        this.name = name;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.sizeEvictionCount = sizeEvictionCount;
+        this.budgetEvictionCount = budgetEvictionCount;
+        this.explicitRemovalCount = explicitRemovalCount;
+        this.size = size;
+        this.weight = weight;
+        this.maximumWeight = maximumWeight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Indicates the ratio of lookups that were served from the cache.
+     *
+     * @return the hit ratio, or 1.0 if the cache has not been used yet.
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Indicates the time spent loading values after a miss.
+     *
+     * @return the total load time in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Indicates the average time a load took.
+     *
+     * @return the average load time in nanoseconds, or 0 if nothing was
+     * loaded.
+     */
+    public double getAverageLoadPenalty() {
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * Indicates the number of entries evicted, for lack of room in the cache
+     * itself or to fit the memory budget. Explicit removals are not included.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return sizeEvictionCount + budgetEvictionCount;
+    }
+
+    public long getSizeEvictionCount() {
+        return sizeEvictionCount;
+    }
+
+    public long getBudgetEvictionCount() {
+        return budgetEvictionCount;
+    }
+
+    public long getExplicitRemovalCount() {
+        return explicitRemovalCount;
+    }
+
+    /**
+     * Indicates the number of entries that left the cache for a given reason.
+     *
+     * @param cause the reason.
+     * @return the number of entries removed for that reason.
+     */
+    public long getRemovalCount(RemovalCause cause) {
+        switch (cause) {
+            case SIZE:
+                return sizeEvictionCount;
+            case BUDGET:
+                return budgetEvictionCount;
+            default:
+                return explicitRemovalCount;
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" + "name=" + name
+                + ", hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", loadCount=" + loadCount
+                + ", totalLoadTime=" + totalLoadTime
+                + ", sizeEvictionCount=" + sizeEvictionCount
+                + ", budgetEvictionCount=" + budgetEvictionCount
+                + ", explicitRemovalCount=" + explicitRemovalCount
+                + ", size=" + size
+                + ", weight=" + weight
+                + ", maximumWeight=" + maximumWeight + '}';
+    }
+
+}
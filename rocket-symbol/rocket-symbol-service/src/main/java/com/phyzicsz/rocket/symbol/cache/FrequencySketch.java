@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequency of cache keys, used by {@link SymbolCache} to
+ * decide whether a new entry is worth more than the entry it would evict.
+ * <p>
+ * This is a count-min sketch with four hash functions and 4-bit counters, so
+ * an estimate never exceeds 15. Sixteen counters are packed into each long and
+ * each key uses a different group of four counters within the longs it hashes
+ * to. After a number of increments proportional to the expected number of
+ * entries every counter is halved, so the sketch follows changes in popularity
+ * instead of remembering history forever.
+ * <p>
+ * Counters are updated with compare-and-set and may be read and incremented
+ * from any thread without locking. A lost race only makes an estimate slightly
+ * less accurate.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_ENTRIES = 1 << 20;
+
+    /**
+     * Longs, of sixteen counters each, allocated per expected entry. A table
+     * sized for exactly the expected entries halves its counters so often that
+     * a long burst of new keys outweighs the working set.
+     */
+    private static final int LONGS_PER_ENTRY = 4;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * Creates a sketch sized for a cache.
+     *
+     * @param expectedEntries the number of entries the cache is expected to
+     * hold.
+     */
+    public FrequencySketch(long expectedEntries) {
+        if (expectedEntries < 0) {
+            throw new IllegalArgumentException("expectedEntries is negative");
+        }
+        int capacity = (int) Math.min(Math.max(expectedEntries, 16), MAXIMUM_ENTRIES) * LONGS_PER_ENTRY;
+        int length = Integer.highestOneBit(capacity - 1) << 1;
+        this.table = new AtomicLongArray(length);
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    /**
+     * Returns the estimated number of recent accesses of a key.
+     *
+     * @param key the key.
+     * @return the estimate, between 0 and 15.
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of a key.
+     *
+     * @param key the key.
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        while (true) {
+            long current = table.get(index);
+            if ((current & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(index, current, current + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halves every counter. Counters that were odd lose half an increment,
+     * which is subtracted from the number of additions since the last reset.
+     */
+    private synchronized void reset() {
+        if (additions.get() < sampleSize) {
+            return;
+        }
+        int truncated = 0;
+        for (int i = 0; i < table.length(); i++) {
+            long value;
+            do {
+                value = table.get(i);
+            } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+            truncated += Long.bitCount(value & ONE_MASK);
+        }
+        additions.set(Math.max(0, (additions.get() >>> 1) - (truncated >>> 2)));
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += (h >>> 32);
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
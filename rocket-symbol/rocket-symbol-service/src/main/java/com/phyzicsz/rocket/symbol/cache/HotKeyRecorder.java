@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts requests per key to find the most frequently requested keys.
+ * <p>
+ * At most a fixed number of distinct keys are tracked; once that many are
+ * known, requests for new keys are not counted until {@link #decay()} makes
+ * room. Decaying halves every count and forgets keys whose count drops to
+ * zero, so calling it periodically keeps the counts weighted towards recent
+ * traffic. Recording is lock-free and uses one {@link LongAdder} per key.
+ *
+ * @param <K> the key type.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class HotKeyRecorder<K> {
+
+    private final int capacity;
+    private final ConcurrentHashMap<K, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * Creates a recorder.
+     *
+     * @param capacity the maximum number of distinct keys tracked.
+     */
+    public HotKeyRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Counts a request for a key.
+     *
+     * @param key the requested key.
+     * @return false if the key is not tracked and the recorder is full.
+     */
+    public boolean record(K key) {
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= capacity) {
+                untracked.increment();
+                return false;
+            }
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+        return true;
+    }
+
+    /**
+     * Returns the most frequently requested keys.
+     *
+     * @param n the maximum number of keys to return.
+     * @return the keys and their counts, most frequent first.
+     */
+    public List<Map.Entry<K, Long>> top(int n) {
+        List<Map.Entry<K, Long>> entries = new ArrayList<>(counts.size());
+        for (Map.Entry<K, LongAdder> entry : counts.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+
+    /**
+     * Halves every count and forgets keys that are no longer requested.
+     */
+    public void decay() {
+        for (Map.Entry<K, LongAdder> entry : counts.entrySet()) {
+            LongAdder count = entry.getValue();
+            long half = count.sumThenReset() / 2;
+            if (half > 0) {
+                count.add(half);
+            } else {
+                counts.remove(entry.getKey(), count);
+            }
+        }
+        untracked.reset();
+    }
+
+    /**
+     * Indicates the number of distinct keys currently tracked.
+     *
+     * @return the tracked key count.
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * Indicates the number of requests that were not counted because the
+     * recorder was full, since the last decay.
+     *
+     * @return the untracked request count.
+     */
+    public long getUntrackedCount() {
+        return untracked.sum();
+    }
+}
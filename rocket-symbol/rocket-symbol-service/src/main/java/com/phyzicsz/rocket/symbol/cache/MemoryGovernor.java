@@ -0,0 +1,324 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the memory held by the symbol caches within a common budget.
+ * <p>
+ * Every cache that holds a significant amount of memory registers as a
+ * {@link Tier} together with its value: how expensive its entries are to
+ * rebuild compared with the other tiers. {@link #enforce()} adds up the weight
+ * of all tiers and, when the total exceeds the budget, shrinks the tiers in
+ * order of increasing value until the total fits again. It is cheap enough to
+ * call after every render.
+ * <p>
+ * Independently of the budget the governor can react to heap pressure. When a
+ * heap usage threshold is set, the collection usage threshold of every tenured
+ * heap pool is set to that fraction of the pool's maximum size and the
+ * governor listens for the notifications of the {@code MemoryMXBean}. Each
+ * time a garbage collection leaves a pool above the threshold, half of the
+ * registered weight is released, again starting with the least valuable tier.
+ * The thresholds are global to the JVM: a threshold that is already set, by
+ * another governor or another component of the application, is left as it
+ * is and the governor reacts to it instead. The listener stays registered
+ * until the governor is {@link #close() closed}.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class MemoryGovernor implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    /**
+     * Fraction of the registered weight released on heap pressure.
+     */
+    private static final int PRESSURE_RELEASE_DIVISOR = 2;
+
+    /**
+     * A structure whose memory is accounted for by the governor.
+     */
+    public interface Tier {
+
+        /**
+         * Indicates the number of bytes currently held.
+         *
+         * @return the weight in bytes.
+         */
+        long weight();
+
+        /**
+         * Releases entries until at least a number of bytes has been freed or
+         * nothing is left.
+         *
+         * @param bytes the number of bytes to free.
+         * @return the number of bytes actually freed.
+         */
+        long shrink(long bytes);
+    }
+
+    private final long budget;
+    private final double heapUsageThreshold;
+    private final List<Registration> tiers = new CopyOnWriteArrayList<>();
+    private final NotificationListener listener = this::handleNotification;
+    private final NotificationEmitter emitter;
+
+    private final LongAdder enforcementCount = new LongAdder();
+    private final LongAdder pressureCount = new LongAdder();
+    private final AtomicLong releasedBytes = new AtomicLong();
+
+    /**
+     * Creates a governor.
+     *
+     * @param budget maximum number of bytes held by all tiers together, or
+     * zero for no limit.
+     * @param heapUsageThreshold fraction of the tenured heap above which the
+     * governor releases memory, or zero to ignore heap usage.
+     */
+    public MemoryGovernor(long budget, double heapUsageThreshold) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget is negative");
+        }
+        if (heapUsageThreshold < 0 || heapUsageThreshold >= 1) {
+            throw new IllegalArgumentException("heapUsageThreshold must be at least 0 and less than 1");
+        }
+
+        this.budget = budget == 0 ? Long.MAX_VALUE : budget;
+        this.heapUsageThreshold = heapUsageThreshold;
+        this.emitter = heapUsageThreshold > 0 ? listenForHeapPressure(heapUsageThreshold) : null;
+    }
+
+    private NotificationEmitter listenForHeapPressure(double threshold) {
+        int pools = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // Only the tenured pools support both kinds of threshold; eden and survivor spaces are always full.
+            if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported()
+                    || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            if (pool.getCollectionUsageThreshold() > 0) {
+                logger.info("keeping the collection usage threshold of {} bytes already set on {}",
+                        pool.getCollectionUsageThreshold(), pool.getName());
+                pools++;
+                continue;
+            }
+            long max = pool.getUsage().getMax();
+            if (max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * threshold));
+                pools++;
+            }
+        }
+        if (pools == 0) {
+            logger.warn("no heap pool supports usage thresholds, heap pressure is ignored");
+            return null;
+        }
+
+        NotificationEmitter memoryBean = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        memoryBean.addNotificationListener(listener, null, null);
+        return memoryBean;
+    }
+
+    private void handleNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            pressureCount.increment();
+            long released = release(weight() / PRESSURE_RELEASE_DIVISOR);
+            logger.info("heap usage above {}%, released {} bytes of cached symbols",
+                    Math.round(heapUsageThreshold * 100), released);
+        }
+    }
+
+    /**
+     * Registers a tier.
+     *
+     * @param name name of the tier, used in the breakdown.
+     * @param value the relative value of the tier. Tiers of lower value are
+     * shrunk first.
+     * @param tier the tier.
+     */
+    public void register(String name, int value, Tier tier) {
+        Registration registration = new Registration(Objects.requireNonNull(name, "name is null"), value,
+                Objects.requireNonNull(tier, "tier is null"));
+        synchronized (tiers) {
+            tiers.add(registration);
+            tiers.sort(Comparator.comparingInt(r -> r.value));
+        }
+    }
+
+    /**
+     * Registers a cache as a tier under its own name.
+     *
+     * @param value the relative value of the cache. Tiers of lower value are
+     * shrunk first.
+     * @param cache the cache.
+     */
+    public void register(int value, SymbolCache<?, ?> cache) {
+        register(cache.getName(), value, cache);
+    }
+
+    /**
+     * Shrinks the least valuable tiers until the registered weight is within
+     * the budget.
+     *
+     * @return the number of bytes released.
+     */
+    public long enforce() {
+        if (budget == Long.MAX_VALUE) {
+            return 0;
+        }
+        long excess = weight() - budget;
+        if (excess <= 0) {
+            return 0;
+        }
+        enforcementCount.increment();
+        return release(excess);
+    }
+
+    /**
+     * Releases memory from the tiers in order of increasing value.
+     *
+     * @param bytes the number of bytes to release.
+     * @return the number of bytes actually released.
+     */
+    public long release(long bytes) {
+        long released = 0;
+        for (Registration registration : tiers) {
+            if (released >= bytes) {
+                break;
+            }
+            released += registration.tier.shrink(bytes - released);
+        }
+        releasedBytes.addAndGet(released);
+        return released;
+    }
+
+    /**
+     * Indicates the number of bytes held by all tiers together.
+     *
+     * @return the total weight.
+     */
+    public long weight() {
+        long weight = 0;
+        for (Registration registration : tiers) {
+            weight += registration.tier.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the weight of every tier, least valuable first.
+     *
+     * @return the tier names mapped to the number of bytes they hold.
+     */
+    public Map<String, Long> breakdown() {
+        Map<String, Long> breakdown = new LinkedHashMap<>();
+        for (Registration registration : tiers) {
+            breakdown.merge(registration.name, registration.tier.weight(), Long::sum);
+        }
+        return breakdown;
+    }
+
+    /**
+     * Indicates the budget shared by all tiers.
+     *
+     * @return the budget in bytes, or {@code Long.MAX_VALUE} if unlimited.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    public double getHeapUsageThreshold() {
+        return heapUsageThreshold;
+    }
+
+    /**
+     * Indicates how often the tiers had to be shrunk to fit the budget.
+     *
+     * @return the number of enforcements that released memory.
+     */
+    public long getEnforcementCount() {
+        return enforcementCount.sum();
+    }
+
+    /**
+     * Indicates how often a heap usage notification was received.
+     *
+     * @return the number of heap pressure events.
+     */
+    public long getPressureCount() {
+        return pressureCount.sum();
+    }
+
+    /**
+     * Indicates the total number of bytes released by the governor.
+     *
+     * @return the released byte count.
+     */
+    public long getReleasedBytes() {
+        return releasedBytes.get();
+    }
+
+    /**
+     * Stops listening for heap usage notifications. The thresholds set on the
+     * heap pools are left in place.
+     */
+    @Override
+    public void close() {
+        if (emitter != null) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException ex) {
+                // Already removed.
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryGovernor{" + "budget=" + budget + ", weight=" + weight() + ", tiers=" + breakdown() + '}';
+    }
+
+    private static final class Registration {
+
+        final String name;
+        final int value;
+        final Tier tier;
+
+        Registration(String name, int value, Tier tier) {
+            this.name = name;
+            this.value = value;
+            this.tier = tier;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An off-heap store of encoded symbol images.
+ * <p>
+ * Entries are appended to fixed-size slabs of direct memory, so the stored
+ * bytes do not add to the Java heap and are never traced by the garbage
+ * collector. Each entry is laid out as
+ * <pre>
+ * int keyLength | int valueLength | key (UTF-8) | value
+ * </pre>
+ * and is located through an open-addressing index with linear probing that
+ * maps the 64-bit hash of the key to the slab and offset of the entry. The key
+ * bytes stored with the entry are compared on lookup, so hash collisions never
+ * return the wrong image.
+ * <p>
+ * The slabs are used as a ring. When the active slab is full the next slab is
+ * recycled: entries that were read since they were written are compacted to the
+ * start of the slab and kept, all other entries are evicted. Space left behind
+ * by replaced or invalidated entries is reclaimed at the same time, so the
+ * store never fragments beyond a single pass over the ring.
+ * <p>
+ * Lookups take a shared lock and may run concurrently; insertions take an
+ * exclusive lock. {@link #transferTo(String, WritableByteChannel)} holds the
+ * shared lock while it writes to the channel, so it should only be used with
+ * channels that do not block for long.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class OffHeapSymbolStore {
+
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    private static final int ENTRY_HEADER_BYTES = 8;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    private final String name;
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Open-addressing index. slabIds holds EMPTY, DELETED or the slab of the entry.
+    private long[] hashes;
+    private int[] slabIds;
+    private int[] offsets;
+    private int[] lengths;
+    private byte[] referenced;
+    private int count;
+    private int used;
+
+    private int activeSlab;
+    private int writeOffset;
+    private long liveBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Creates a new store. Slabs are allocated on first use.
+     *
+     * @param name name of the store, used in statistics.
+     * @param capacity total number of bytes of direct memory to use.
+     * @param slabSize size of a single slab. No entry can be larger than a
+     * slab.
+     */
+    public OffHeapSymbolStore(String name, long capacity, int slabSize) {
+        if (slabSize <= ENTRY_HEADER_BYTES) {
+            throw new IllegalArgumentException("slabSize is too small");
+        }
+        if (capacity < 2L * slabSize) {
+            throw new IllegalArgumentException("capacity must hold at least two slabs");
+        }
+        if (capacity / slabSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many slabs");
+        }
+
+        this.name = Objects.requireNonNull(name, "name is null");
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[(int) (capacity / slabSize)];
+        this.slabs[0] = ByteBuffer.allocateDirect(slabSize);
+        allocateIndex(INITIAL_INDEX_CAPACITY);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Indicates the total number of bytes of direct memory this store may use.
+     *
+     * @return the capacity in bytes.
+     */
+    public long getCapacity() {
+        return (long) slabs.length * slabSize;
+    }
+
+    /**
+     * Returns a heap copy of the value stored for a key.
+     *
+     * @param key the key.
+     * @return a copy of the value, or null if the key is not stored.
+     */
+    public byte[] get(String key) {
+        return read(key, true);
+    }
+
+    /**
+     * Returns a heap copy of the value stored for a key without counting the
+     * lookup or marking the entry as read, so it is not kept for the lookup
+     * when its slab is recycled.
+     *
+     * @param key the key.
+     * @return a copy of the value, or null if the key is not stored.
+     */
+    public byte[] peek(String key) {
+        return read(key, false);
+    }
+
+    private byte[] read(String key, boolean record) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int slot = find(keyBytes, hash(keyBytes));
+            if (slot < 0) {
+                if (record) {
+                    missCount.increment();
+                }
+                return null;
+            }
+            if (record) {
+                hitCount.increment();
+                referenced[slot] = 1;
+            }
+
+            ByteBuffer buffer = valueBuffer(slot, keyBytes.length);
+            byte[] value = new byte[buffer.remaining()];
+            buffer.get(value);
+            return value;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the value stored for a key directly from off-heap memory to a
+     * channel, without copying it to the heap.
+     *
+     * @param key the key.
+     * @param channel the channel to write to.
+     * @return the number of bytes written, or -1 if the key is not stored.
+     * @throws IOException if the channel cannot be written.
+     */
+    public long transferTo(String key, WritableByteChannel channel) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int slot = find(keyBytes, hash(keyBytes));
+            if (slot < 0) {
+                missCount.increment();
+                return -1;
+            }
+            hitCount.increment();
+            referenced[slot] = 1;
+
+            ByteBuffer buffer = valueBuffer(slot, keyBytes.length);
+            long written = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return written;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a value, replacing any value stored for the same key.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return false if the entry is larger than a slab and was not stored.
+     */
+    public boolean put(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_HEADER_BYTES + keyBytes.length + value.length;
+        if (length > slabSize) {
+            return false;
+        }
+
+        long hash = hash(keyBytes);
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot >= 0) {
+                delete(slot);
+            }
+
+            while (writeOffset + length > slabSize) {
+                advance();
+            }
+
+            ByteBuffer slab = slabs[activeSlab].duplicate();
+            slab.position(writeOffset);
+            slab.putInt(keyBytes.length);
+            slab.putInt(value.length);
+            slab.put(keyBytes);
+            slab.put(value);
+
+            insert(hash, activeSlab, writeOffset, length);
+            writeOffset += length;
+            liveBytes += length;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash(keyBytes));
+            if (slot >= 0) {
+                delete(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            allocateIndex(INITIAL_INDEX_CAPACITY);
+            activeSlab = 0;
+            writeOffset = 0;
+            liveBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indicates the number of entries currently stored.
+     *
+     * @return the entry count.
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indicates the number of bytes occupied by live entries, including keys
+     * and entry headers.
+     *
+     * @return the live byte count.
+     */
+    public long weight() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public CacheStats stats() {
+        lock.readLock().lock();
+        try {
+            return new CacheStats(name, hitCount.sum(), missCount.sum(), evictionCount.sum(),
+                    count, liveBytes, getCapacity());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ByteBuffer valueBuffer(int slot, int keyLength) {
+        int offset = offsets[slot];
+        ByteBuffer buffer = slabs[slabIds[slot]].duplicate();
+        buffer.limit(offset + lengths[slot]);
+        buffer.position(offset + ENTRY_HEADER_BYTES + keyLength);
+        return buffer;
+    }
+
+    /**
+     * Moves writing to the next slab in the ring, recycling it if it is in use.
+     */
+    private void advance() {
+        activeSlab = (activeSlab + 1) % slabs.length;
+        writeOffset = 0;
+        if (slabs[activeSlab] == null) {
+            slabs[activeSlab] = ByteBuffer.allocateDirect(slabSize);
+            return;
+        }
+
+        // Collect the entries of the slab in address order, then slide the referenced ones down to the start of the
+        // slab. Destinations never overlap the source of a later entry, so a single forward pass is enough.
+        long[] ordered = new long[count];
+        int n = 0;
+        for (int i = 0; i < slabIds.length; i++) {
+            if (slabIds[i] == activeSlab) {
+                ordered[n++] = ((long) offsets[i] << 32) | i;
+            }
+        }
+        Arrays.sort(ordered, 0, n);
+
+        ByteBuffer slab = slabs[activeSlab];
+        byte[] scratch = new byte[0];
+        for (int k = 0; k < n; k++) {
+            int slot = (int) ordered[k];
+            int length = lengths[slot];
+            if (referenced[slot] == 0) {
+                delete(slot);
+                evictionCount.increment();
+                continue;
+            }
+
+            referenced[slot] = 0;
+            if (offsets[slot] != writeOffset) {
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                ByteBuffer src = slab.duplicate();
+                src.position(offsets[slot]);
+                src.get(scratch, 0, length);
+                ByteBuffer dst = slab.duplicate();
+                dst.position(writeOffset);
+                dst.put(scratch, 0, length);
+                offsets[slot] = writeOffset;
+            }
+            writeOffset += length;
+        }
+    }
+
+    private int find(byte[] keyBytes, long hash) {
+        int mask = slabIds.length - 1;
+        int i = spread(hash) & mask;
+        while (true) {
+            int slab = slabIds[i];
+            if (slab == EMPTY) {
+                return -1;
+            }
+            if (slab != DELETED && hashes[i] == hash && keyEquals(slabs[slab], offsets[i], keyBytes)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private static boolean keyEquals(ByteBuffer slab, int offset, byte[] keyBytes) {
+        if (slab.getInt(offset) != keyBytes.length) {
+            return false;
+        }
+        int start = offset + ENTRY_HEADER_BYTES;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (slab.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(long hash, int slab, int offset, int length) {
+        if ((used + 1) * 4L > slabIds.length * 3L) {
+            rehash();
+        }
+
+        int mask = slabIds.length - 1;
+        int i = spread(hash) & mask;
+        while (slabIds[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        if (slabIds[i] == EMPTY) {
+            used++;
+        }
+        hashes[i] = hash;
+        slabIds[i] = slab;
+        offsets[i] = offset;
+        lengths[i] = length;
+        referenced[i] = 0;
+        count++;
+    }
+
+    private void delete(int slot) {
+        liveBytes -= lengths[slot];
+        slabIds[slot] = DELETED;
+        referenced[slot] = 0;
+        count--;
+    }
+
+    private void rehash() {
+        long[] oldHashes = hashes;
+        int[] oldSlabIds = slabIds;
+        int[] oldOffsets = offsets;
+        int[] oldLengths = lengths;
+        byte[] oldReferenced = referenced;
+
+        // Grow only if the live entries need it; otherwise rebuilding at the same size purges the tombstones.
+        int capacity = oldSlabIds.length;
+        if ((count + 1) * 2L > capacity) {
+            capacity *= 2;
+        }
+        allocateIndex(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldSlabIds.length; j++) {
+            if (oldSlabIds[j] < 0) {
+                continue;
+            }
+            int i = spread(oldHashes[j]) & mask;
+            while (slabIds[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = oldHashes[j];
+            slabIds[i] = oldSlabIds[j];
+            offsets[i] = oldOffsets[j];
+            lengths[i] = oldLengths[j];
+            referenced[i] = oldReferenced[j];
+            count++;
+            used++;
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        hashes = new long[capacity];
+        slabIds = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        referenced = new byte[capacity];
+        Arrays.fill(slabIds, EMPTY);
+        count = 0;
+        used = 0;
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the key bytes.
+     */
+    private static long hash(byte[] keyBytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : keyBytes) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapSymbolStore{" + "name=" + name + ", slabs=" + slabs.length + ", slabSize=" + slabSize + '}';
+    }
+}
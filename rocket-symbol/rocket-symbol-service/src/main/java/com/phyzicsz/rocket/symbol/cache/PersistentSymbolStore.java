@@ -0,0 +1,454 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk-backed, append-only store of encoded symbol images that survives
+ * restarts.
+ * <p>
+ * Entries are appended to a single segment file that is memory-mapped in full,
+ * so reads are served straight from the page cache. The segment starts with a
+ * header recording the asset version the entries were rendered from, followed
+ * by records laid out as
+ * <pre>
+ * int keyLength | int valueLength | int crc32 | key (UTF-8) | value
+ * </pre>
+ * The keys and record offsets are additionally written to an index file next to
+ * the segment when the store is closed, so reopening a large store does not
+ * have to walk every record. Records appended after the index was last written
+ * are recovered by scanning the segment from the end of the indexed region; a
+ * record with a bad checksum, such as one torn by a crash, ends the scan and is
+ * overwritten by the next append.
+ * <p>
+ * A store opened with a different asset version than the one recorded in its
+ * segment is emptied, so images rendered from an older symbol pack are never
+ * served and their records do not linger in the segment. Once the segment is
+ * full further entries are rejected; the store does not evict.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class PersistentSymbolStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentSymbolStore.class);
+
+    private static final int SEGMENT_MAGIC = 0x5253594d; // "RSYM"
+    private static final int INDEX_MAGIC = 0x52535849; // "RSXI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 12;
+
+    private final String name;
+    private final Path segmentPath;
+    private final Path indexPath;
+    private final long assetVersion;
+    private final MappedByteBuffer segment;
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+
+    private int writeOffset;
+    private boolean closed;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private PersistentSymbolStore(String name, Path segmentPath, long assetVersion, MappedByteBuffer segment) {
+        this.name = name;
+        this.segmentPath = segmentPath;
+        this.indexPath = segmentPath.resolveSibling(segmentPath.getFileName() + ".idx");
+        this.assetVersion = assetVersion;
+        this.segment = segment;
+    }
+
+    /**
+     * Opens a store, creating the segment file if it does not exist.
+     *
+     * @param name name of the store, used in statistics and logging.
+     * @param path path of the segment file. The index is written to the same
+     * path with an {@code .idx} suffix.
+     * @param capacity size of the segment file in bytes, at most 2GB.
+     * @param assetVersion version of the symbol assets the stored images are
+     * rendered from. Existing entries with another version are discarded.
+     * @return the opened store.
+     * @throws IOException if the segment cannot be created or mapped.
+     */
+    public static PersistentSymbolStore open(String name, Path path, long capacity, long assetVersion)
+            throws IOException {
+        Objects.requireNonNull(name, "name is null");
+        Objects.requireNonNull(path, "path is null");
+        if (capacity <= HEADER_BYTES + RECORD_HEADER_BYTES || capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity must be between " + (HEADER_BYTES + RECORD_HEADER_BYTES)
+                    + " and " + Integer.MAX_VALUE + " bytes");
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // An existing segment created with a larger capacity keeps its size so no entries are cut off.
+            long size = Math.min(Integer.MAX_VALUE, Math.max(capacity, channel.size()));
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        PersistentSymbolStore store = new PersistentSymbolStore(name, path, assetVersion, segment);
+        store.recover();
+        return store;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAssetVersion() {
+        return assetVersion;
+    }
+
+    /**
+     * Indicates the size of the segment file.
+     *
+     * @return the capacity in bytes.
+     */
+    public long getCapacity() {
+        return segment.capacity();
+    }
+
+    /**
+     * Returns a heap copy of the value stored for a key.
+     *
+     * @param key the key.
+     * @return a copy of the value, or null if the key is not stored.
+     */
+    public byte[] get(String key) {
+        ByteBuffer buffer = valueBuffer(key);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Writes the value stored for a key directly from the mapped segment to a
+     * channel.
+     *
+     * @param key the key.
+     * @param channel the channel to write to.
+     * @return the number of bytes written, or -1 if the key is not stored.
+     * @throws IOException if the channel cannot be written.
+     */
+    public long transferTo(String key, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = valueBuffer(key);
+        if (buffer == null) {
+            return -1;
+        }
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return written;
+    }
+
+    /**
+     * Appends a value unless one is already stored for the key. Stored values
+     * are never replaced: for a given asset version a key always renders to
+     * the same image.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return false if the entry was not stored because the segment is full
+     * or the store is closed.
+     */
+    public boolean put(String key, byte[] value) {
+        if (index.containsKey(key)) {
+            return true;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long length = (long) RECORD_HEADER_BYTES + keyBytes.length + value.length;
+        synchronized (this) {
+            if (closed || writeOffset + length > segment.capacity()) {
+                return false;
+            }
+            if (index.containsKey(key)) {
+                return true;
+            }
+
+            ByteBuffer buffer = segment.duplicate();
+            buffer.position(writeOffset + RECORD_HEADER_BYTES);
+            buffer.put(keyBytes);
+            buffer.put(value);
+            // The lengths are written last, so a reader scanning the segment never sees a half-written record as
+            // complete; the checksum catches records torn by a crash.
+            buffer.putInt(writeOffset + 8, checksum(keyBytes, value));
+            buffer.putInt(writeOffset + 4, value.length);
+            buffer.putInt(writeOffset, keyBytes.length);
+
+            index.put(key, writeOffset);
+            writeOffset += (int) length;
+            terminate(writeOffset);
+            return true;
+        }
+    }
+
+    /**
+     * Indicates the number of entries currently stored.
+     *
+     * @return the entry count.
+     */
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * Indicates the number of bytes of the segment in use, including the
+     * header and record headers.
+     *
+     * @return the used byte count.
+     */
+    public synchronized long weight() {
+        return writeOffset;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(name, hitCount.sum(), missCount.sum(), 0, size(), weight(), getCapacity());
+    }
+
+    /**
+     * Flushes the segment to disk and writes the index, so the next
+     * {@link #open(String, Path, long, long) open} can skip scanning the
+     * records.
+     *
+     * @throws IOException if the index cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        segment.force();
+        writeIndex();
+    }
+
+    /**
+     * Flushes the store and releases it. Further appends are rejected.
+     *
+     * @throws IOException if the index cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+    }
+
+    private ByteBuffer valueBuffer(String key) {
+        Integer offset = index.get(key);
+        if (offset == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+
+        ByteBuffer buffer = segment.duplicate();
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+        int start = offset + RECORD_HEADER_BYTES + keyLength;
+        buffer.limit(start + valueLength);
+        buffer.position(start);
+        return buffer;
+    }
+
+    /**
+     * Validates the segment header and rebuilds the in-memory index from the
+     * index file and the records appended after it was written.
+     */
+    private synchronized void recover() throws IOException {
+        ByteBuffer buffer = segment.duplicate();
+        if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                || buffer.getLong(8) != assetVersion) {
+            if (buffer.getInt(0) == SEGMENT_MAGIC) {
+                logger.info("discarding {}: asset version changed from {} to {}", segmentPath,
+                        Long.toHexString(buffer.getLong(8)), Long.toHexString(assetVersion));
+            }
+            reset();
+            return;
+        }
+
+        int offset = readIndex();
+        int recovered = 0;
+        while (true) {
+            int length = readRecord(buffer, offset);
+            if (length <= 0) {
+                break;
+            }
+            offset += length;
+            recovered++;
+        }
+        writeOffset = offset;
+        terminate(writeOffset);
+        logger.info("opened {} with {} entries, {} recovered past the index", segmentPath, index.size(), recovered);
+    }
+
+    /**
+     * Reads the record at an offset into the index.
+     *
+     * @return the length of the record, or zero if there is no valid record at
+     * the offset.
+     */
+    private int readRecord(ByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER_BYTES > buffer.capacity()) {
+            return 0;
+        }
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+        if (keyLength <= 0 || valueLength < 0
+                || (long) offset + RECORD_HEADER_BYTES + keyLength + valueLength > buffer.capacity()) {
+            return 0;
+        }
+
+        byte[] keyBytes = new byte[keyLength];
+        byte[] value = new byte[valueLength];
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + RECORD_HEADER_BYTES);
+        record.get(keyBytes);
+        record.get(value);
+        if (checksum(keyBytes, value) != buffer.getInt(offset + 8)) {
+            logger.warn("{}: ignoring damaged record at offset {}", segmentPath, offset);
+            return 0;
+        }
+
+        index.put(new String(keyBytes, StandardCharsets.UTF_8), offset);
+        return RECORD_HEADER_BYTES + keyLength + valueLength;
+    }
+
+    /**
+     * Loads the index file if it belongs to the current segment.
+     *
+     * @return the segment offset up to which the index is complete.
+     */
+    private int readIndex() {
+        if (!Files.isRegularFile(indexPath)) {
+            return HEADER_BYTES;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != assetVersion) {
+                return HEADER_BYTES;
+            }
+            int end = in.readInt();
+            int count = in.readInt();
+            if (end < HEADER_BYTES || end > segment.capacity()) {
+                return HEADER_BYTES;
+            }
+
+            ByteBuffer buffer = segment.duplicate();
+            for (int i = 0; i < count; i++) {
+                byte[] keyBytes = new byte[in.readInt()];
+                in.readFully(keyBytes);
+                int offset = in.readInt();
+                if (offset < HEADER_BYTES || offset >= end || buffer.getInt(offset) != keyBytes.length) {
+                    index.clear();
+                    return HEADER_BYTES;
+                }
+                index.put(new String(keyBytes, StandardCharsets.UTF_8), offset);
+            }
+            return end;
+        } catch (IOException ex) {
+            logger.warn("{}: ignoring unreadable index", indexPath, ex);
+            index.clear();
+            return HEADER_BYTES;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(assetVersion);
+            out.writeInt(writeOffset);
+            out.writeInt(index.size());
+            for (Map.Entry<String, Integer> entry : index.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(entry.getValue());
+            }
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void reset() throws IOException {
+        index.clear();
+        Files.deleteIfExists(indexPath);
+
+        ByteBuffer buffer = segment.duplicate();
+        buffer.putInt(0, SEGMENT_MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(8, assetVersion);
+        writeOffset = HEADER_BYTES;
+        terminate(writeOffset);
+    }
+
+    /**
+     * Marks the end of the records, so a scan does not mistake stale bytes
+     * after it for a record.
+     */
+    private void terminate(int offset) {
+        if (offset + 4 <= segment.capacity()) {
+            segment.duplicate().putInt(offset, 0);
+        }
+    }
+
+    private static int checksum(byte[] keyBytes, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "PersistentSymbolStore{" + "name=" + name + ", path=" + segmentPath + '}';
+    }
+}
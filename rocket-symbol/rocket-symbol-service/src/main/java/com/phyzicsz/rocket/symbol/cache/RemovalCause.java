@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+/**
+ * The reason an entry left a cache.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public enum RemovalCause {
+
+    /**
+     * Evicted to keep the cache within its own weight or entry limit, or
+     * refused admission by the frequency sketch.
+     */
+    SIZE,
+    /**
+     * Released by the {@link MemoryGovernor} to keep all caches within the
+     * shared memory budget or to relieve heap pressure.
+     */
+    BUDGET,
+    /**
+     * Removed explicitly, typically because the assets it was built from
+     * changed.
+     */
+    EXPLICIT
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent computations of the same key.
+ * <p>
+ * The first caller for a key runs the computation; callers that arrive for the
+ * same key while it is running wait for it and receive the same result, or the
+ * same exception. Once the computation completes the key is forgotten, so the
+ * result is never reused by later callers: pair this class with a cache that
+ * the computation fills before it returns.
+ *
+ * @param <K> the key type.
+ * @param <V> the result type.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final LongAdder executionCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * Computes a value.
+     *
+     * @param <V> the result type.
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+
+        V load() throws IOException;
+    }
+
+    /**
+     * Runs a computation for a key, or waits for the one already running.
+     *
+     * @param key the key.
+     * @param loader computes the value if no computation for the key is
+     * running.
+     * @return the computed value.
+     * @throws IOException if the computation failed, or waiting for it was
+     * interrupted.
+     */
+    public V execute(K key, Loader<? extends V> loader) throws IOException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, future);
+        if (inFlight != null) {
+            coalescedCount.increment();
+            return await(inFlight);
+        }
+
+        executionCount.increment();
+        try {
+            V value = loader.load();
+            future.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> inFlight) throws IOException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a concurrent computation");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Indicates the number of computations that were run.
+     *
+     * @return the execution count.
+     */
+    public long getExecutionCount() {
+        return executionCount.sum();
+    }
+
+    /**
+     * Indicates the number of calls that waited for a computation started by
+     * another caller instead of running their own.
+     *
+     * @return the number of computations saved.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Indicates the number of computations currently running.
+     *
+     * @return the in-flight count.
+     */
+    public int getInFlightCount() {
+        return calls.size();
+    }
+}
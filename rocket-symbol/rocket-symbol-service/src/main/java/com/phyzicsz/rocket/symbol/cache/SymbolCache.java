@@ -0,0 +1,665 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A bounded, concurrent, weight-limited cache used by the symbol renderers.
+ * <p>
+ * The cache is split into a fixed number of independently locked segments.
+ * Each segment keeps its entries in access order and evicts the least recently
+ * used entries once its share of the maximum weight is exceeded, so lookups for
+ * different keys rarely contend. The weight of every entry is computed once by
+ * a {@link Weigher} when the entry is inserted; entries heavier than a single
+ * segment are never cached.
+ * <p>
+ * Hits, misses, load times and removals by {@link RemovalCause} are recorded
+ * with {@link LongAdder} counters and can be read at any time through
+ * {@link #stats()}.
+ * <p>
+ * Caches whose keys are requested with a very skewed distribution can enable
+ * frequency-based admission, modeled on W-TinyLFU. A {@link FrequencySketch}
+ * estimates how often every key has been requested recently, whether or not it
+ * is cached. New entries first go to a small LRU window, sized from the
+ * capacity of the whole cache but always holding the few newest entries of
+ * each segment; when they leave it they are compared with the least recently
+ * used entries of the main region and only the more frequently used entry is
+ * kept. A burst of keys that are
+ * requested once therefore cycles through the window without displacing the
+ * popular entries.
+ * <p>
+ * The cache can be asked to give up memory before it reaches its bounds, see
+ * {@link #shrink(long)}, which lets a {@link MemoryGovernor} balance several
+ * caches against a common budget.
+ * <p>
+ * A cache may additionally be bounded by entry count. A cache created with a
+ * maximum weight or size of zero is disabled: every lookup is a miss and
+ * nothing is retained.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class SymbolCache<K, V> implements MemoryGovernor.Tier {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * The admission windows of all segments together hold this fraction of
+     * the capacity of the cache.
+     */
+    private static final int WINDOW_DIVISOR = 100;
+
+    /**
+     * The admission window of a segment keeps at least this many of its
+     * newest entries, however heavy they are, so that a new entry always has
+     * a chance to be requested again before it must compete for admission.
+     */
+    private static final int WINDOW_MINIMUM_ENTRIES = 4;
+
+    private final String name;
+    private final long maximumWeight;
+    private final long maximumSize;
+    private final Weigher<? super K, ? super V> weigher;
+    private final FrequencySketch sketch;
+    private final List<Segment<K, V>> segments;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder sizeEvictionCount = new LongAdder();
+    private final LongAdder budgetEvictionCount = new LongAdder();
+    private final LongAdder explicitRemovalCount = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param name name of the cache, used in statistics and logging.
+     * @param maximumWeight the maximum total weight of all entries. A value of
+     * zero disables the cache.
+     * @param weigher computes the weight of each entry.
+     */
+    public SymbolCache(String name, long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(name, maximumWeight, Long.MAX_VALUE, weigher);
+    }
+
+    /**
+     * Creates a new cache bounded by both weight and entry count.
+     *
+     * @param name name of the cache, used in statistics and logging.
+     * @param maximumWeight the maximum total weight of all entries. A value of
+     * zero disables the cache.
+     * @param maximumSize the maximum number of entries. A value of zero
+     * disables the cache.
+     * @param weigher computes the weight of each entry.
+     */
+    public SymbolCache(String name, long maximumWeight, long maximumSize, Weigher<? super K, ? super V> weigher) {
+        this(name, maximumWeight, maximumSize, weigher, false);
+    }
+
+    /**
+     * Creates a new cache bounded by both weight and entry count, optionally
+     * with frequency-based admission.
+     *
+     * @param name name of the cache, used in statistics and logging.
+     * @param maximumWeight the maximum total weight of all entries. A value of
+     * zero disables the cache.
+     * @param maximumSize the maximum number of entries. A value of zero
+     * disables the cache.
+     * @param weigher computes the weight of each entry.
+     * @param frequencyAdmission true to admit new entries only when they are
+     * used more often than the entries they would evict.
+     */
+    public SymbolCache(String name, long maximumWeight, long maximumSize, Weigher<? super K, ? super V> weigher,
+            boolean frequencyAdmission) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("maximumWeight is negative");
+        }
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize is negative");
+        }
+
+        this.name = Objects.requireNonNull(name, "name is null");
+        this.maximumWeight = maximumSize == 0 ? 0 : maximumWeight;
+        this.maximumSize = this.maximumWeight == 0 ? 0 : maximumSize;
+        this.weigher = Objects.requireNonNull(weigher, "weigher is null");
+
+        long bound = Math.min(this.maximumWeight / 1024, this.maximumSize);
+        int segmentCount = (int) Math.max(1, Math.min(MAX_SEGMENTS, bound));
+        this.sketch = frequencyAdmission && this.maximumWeight > 0
+                ? new FrequencySketch(bound)
+                : null;
+        this.segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            long segmentWeight = share(this.maximumWeight, segmentCount, i);
+            long segmentSize = share(this.maximumSize, segmentCount, i);
+            if (sketch == null) {
+                this.segments.add(new Segment<>(segmentWeight, segmentSize, segmentWeight, segmentSize, 0, null));
+            } else {
+                long windowSize = this.maximumSize == Long.MAX_VALUE
+                        ? Long.MAX_VALUE : Math.max(1, share(this.maximumSize / WINDOW_DIVISOR, segmentCount, i));
+                this.segments.add(new Segment<>(segmentWeight, segmentSize,
+                        share(this.maximumWeight / WINDOW_DIVISOR, segmentCount, i), windowSize,
+                        (int) Math.min(WINDOW_MINIMUM_ENTRIES, segmentSize), sketch));
+            }
+        }
+    }
+
+    private static long share(long total, int parts, int index) {
+        if (total == Long.MAX_VALUE) {
+            return total;
+        }
+        return total / parts + (index < total % parts ? 1 : 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Indicates whether this cache retains anything at all.
+     *
+     * @return false if the cache was created with a zero bound.
+     */
+    public boolean isEnabled() {
+        return maximumWeight > 0;
+    }
+
+    /**
+     * Indicates whether new entries must win a frequency comparison against
+     * the entries they would evict.
+     *
+     * @return true if the cache uses frequency-based admission.
+     */
+    public boolean isFrequencyAdmission() {
+        return sketch != null;
+    }
+
+    /**
+     * Returns the value associated with a key, or null if the key is not
+     * cached.
+     *
+     * @param key the key to look up.
+     * @return the cached value, or null.
+     */
+    public V getIfPresent(K key) {
+        recordAccess(key);
+        V value = segmentFor(key).get(key);
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value associated with a key, loading and caching it if it is
+     * not present. The loader runs outside of any lock, so concurrent misses
+     * for the same key may each invoke it; the first value stored wins.
+     *
+     * @param key the key to look up.
+     * @param loader computes the value on a miss. May return null, in which
+     * case nothing is cached.
+     * @return the cached or loaded value, or null if the loader returned null.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        recordAccess(key);
+        Segment<K, V> segment = segmentFor(key);
+        V value = segment.get(key);
+        if (value != null) {
+            hitCount.increment();
+            return value;
+        }
+
+        missCount.increment();
+        long start = System.nanoTime();
+        value = loader.apply(key);
+        recordLoad(System.nanoTime() - start);
+        if (value == null) {
+            return null;
+        }
+
+        V existing = segment.putIfAbsent(key, value, weigher.weigh(key, value), sizeEvictionCount);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Associates a value with a key, replacing any existing value. Unlike the
+     * lookup methods this does not count as a request for the key, so it is
+     * meant to follow a missed {@link #getIfPresent(Object) getIfPresent}.
+     *
+     * @param key the key.
+     * @param value the value.
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value is null");
+        segmentFor(key).put(key, value, weigher.weigh(key, value), sizeEvictionCount);
+    }
+
+    /**
+     * Counts a load performed by the caller after a missed
+     * {@link #getIfPresent(Object) getIfPresent}. Loads through
+     * {@link #get(Object, Function)} are counted automatically.
+     *
+     * @param nanos the time the load took, in nanoseconds.
+     */
+    public void recordLoad(long nanos) {
+        loadCount.increment();
+        totalLoadTime.add(nanos);
+    }
+
+    public void invalidate(K key) {
+        if (segmentFor(key).remove(key)) {
+            explicitRemovalCount.increment();
+        }
+    }
+
+    /**
+     * Removes every entry whose key matches a predicate.
+     *
+     * @param filter selects the keys to remove.
+     * @return the number of entries removed.
+     */
+    public long invalidateIf(Predicate<? super K> filter) {
+        long removed = 0;
+        for (Segment<K, V> segment : segments) {
+            removed += segment.removeIf(filter);
+        }
+        explicitRemovalCount.add(removed);
+        return removed;
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            explicitRemovalCount.add(segment.clear());
+        }
+    }
+
+    /**
+     * Performs an action for every entry. Each segment is copied under its
+     * lock and the action runs on the copy, so it may use the cache. Entries
+     * added or removed concurrently may or may not be seen. This does not
+     * count as a request for any key.
+     *
+     * @param action the action to perform.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Segment<K, V> segment : segments) {
+            for (Map.Entry<K, V> entry : segment.entries()) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Indicates the number of entries currently held by the cache.
+     *
+     * @return the entry count.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Evicts entries until at least a given weight has been freed or the cache
+     * is empty. Each segment gives up its eldest entries in turn, entries not
+     * yet admitted past the window first.
+     *
+     * @param bytes the weight to free.
+     * @return the weight actually freed.
+     */
+    @Override
+    public long shrink(long bytes) {
+        long freed = 0;
+        boolean evicted = true;
+        while (freed < bytes && evicted) {
+            evicted = false;
+            for (Segment<K, V> segment : segments) {
+                long weight = segment.evictEldest(budgetEvictionCount);
+                if (weight >= 0) {
+                    evicted = true;
+                    freed += weight;
+                    if (freed >= bytes) {
+                        break;
+                    }
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Indicates the total weight of the entries currently held by the cache.
+     *
+     * @return the total weight.
+     */
+    @Override
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(name, hitCount.sum(), missCount.sum(), loadCount.sum(), totalLoadTime.sum(),
+                sizeEvictionCount.sum(), budgetEvictionCount.sum(), explicitRemovalCount.sum(),
+                size(), weight(), maximumWeight);
+    }
+
+    private void recordAccess(K key) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments.get((h & 0x7fffffff) % segments.size());
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolCache{" + "name=" + name + ", maximumWeight=" + maximumWeight + '}';
+    }
+
+    private static final class Node<V> {
+
+        final V value;
+        final int weight;
+
+        Node(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A share of the cache. Without an admission sketch the window is the
+     * whole segment and the segment is a plain LRU cache. With a sketch, new
+     * entries enter a small LRU window; entries leaving the window are only
+     * admitted to the main region if they are accessed more often than the
+     * main entries they would evict. The window may hold its minimum number of
+     * entries beyond its share of the segment, in which case the main region
+     * gives up the difference.
+     */
+    private static final class Segment<K, V> {
+
+        private final long maximumWeight;
+        private final long maximumSize;
+        private final long windowMaximumWeight;
+        private final long windowMaximumSize;
+        private final int windowMinimumSize;
+        private final FrequencySketch sketch;
+        private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+        private long windowWeight;
+        private long mainWeight;
+
+        Segment(long maximumWeight, long maximumSize, long windowMaximumWeight, long windowMaximumSize,
+                int windowMinimumSize, FrequencySketch sketch) {
+            this.maximumWeight = maximumWeight;
+            this.maximumSize = maximumSize;
+            this.windowMaximumWeight = windowMaximumWeight;
+            this.windowMaximumSize = windowMaximumSize;
+            this.windowMinimumSize = windowMinimumSize;
+            this.sketch = sketch;
+        }
+
+        /**
+         * Indicates whether the window must give up its eldest entry: it
+         * exceeds its share while holding more than its minimum number of
+         * entries, or it would not fit into the segment even with the main
+         * region empty.
+         */
+        private boolean windowOverflows() {
+            if (windowWeight > maximumWeight || window.size() > maximumSize) {
+                return true;
+            }
+            return window.size() > windowMinimumSize
+                    && (windowWeight > windowMaximumWeight || window.size() > windowMaximumSize);
+        }
+
+        /**
+         * Indicates whether the main region exceeds what the segment has left
+         * beside the window.
+         */
+        private boolean mainOverflows() {
+            if (mainWeight > maximumWeight - Math.max(windowWeight, windowMaximumWeight)) {
+                return true;
+            }
+            return maximumSize != Long.MAX_VALUE
+                    && main.size() > maximumSize - Math.max(window.size(), windowMaximumSize);
+        }
+
+        /**
+         * Evicts main entries in LRU order until the main region fits, except
+         * for the given key.
+         */
+        private void evictMain(K keep, LongAdder evictions) {
+            Iterator<Map.Entry<K, Node<V>>> it = main.entrySet().iterator();
+            while (mainOverflows() && it.hasNext()) {
+                Map.Entry<K, Node<V>> eldest = it.next();
+                if (eldest.getKey().equals(keep)) {
+                    continue;
+                }
+                mainWeight -= eldest.getValue().weight;
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized V get(K key) {
+            Node<V> node = window.get(key);
+            if (node == null) {
+                node = main.get(key);
+            }
+            return node != null ? node.value : null;
+        }
+
+        synchronized V putIfAbsent(K key, V value, int entryWeight, LongAdder evictions) {
+            V existing = get(key);
+            if (existing != null) {
+                return existing;
+            }
+            put(key, value, entryWeight, evictions);
+            return null;
+        }
+
+        synchronized void put(K key, V value, int entryWeight, LongAdder evictions) {
+            if (entryWeight > maximumWeight || maximumSize == 0) {
+                remove(key);
+                return;
+            }
+
+            Node<V> node = new Node<>(value, entryWeight);
+            if (main.containsKey(key)) {
+                // Already admitted; replace in place and make room by recency alone.
+                mainWeight += entryWeight - main.put(key, node).weight;
+                evictMain(key, evictions);
+                return;
+            }
+
+            Node<V> previous = window.put(key, node);
+            if (previous != null) {
+                windowWeight -= previous.weight;
+            }
+            windowWeight += entryWeight;
+
+            while (windowOverflows()) {
+                Iterator<Map.Entry<K, Node<V>>> it = window.entrySet().iterator();
+                Map.Entry<K, Node<V>> eldest = it.next();
+                it.remove();
+                windowWeight -= eldest.getValue().weight;
+                if (sketch == null) {
+                    evictions.increment();
+                } else {
+                    admit(eldest.getKey(), eldest.getValue(), evictions);
+                }
+            }
+            // A window holding its minimum entries beyond its share takes the room from the main region.
+            evictMain(null, evictions);
+        }
+
+        /**
+         * Offers an entry leaving the window to the main region. Main entries
+         * are evicted in LRU order for as long as the candidate is more
+         * frequently used than each of them; otherwise the candidate itself is
+         * evicted.
+         */
+        private void admit(K candidateKey, Node<V> candidate, LongAdder evictions) {
+            main.put(candidateKey, candidate);
+            mainWeight += candidate.weight;
+
+            int candidateFrequency = -1;
+            Iterator<Map.Entry<K, Node<V>>> it = main.entrySet().iterator();
+            while (mainOverflows()) {
+                Map.Entry<K, Node<V>> victim = it.next();
+                if (!victim.getKey().equals(candidateKey)) {
+                    if (candidateFrequency < 0) {
+                        candidateFrequency = sketch.frequency(candidateKey);
+                    }
+                    if (candidateFrequency > sketch.frequency(victim.getKey())) {
+                        mainWeight -= victim.getValue().weight;
+                        it.remove();
+                        evictions.increment();
+                        continue;
+                    }
+                }
+                main.remove(candidateKey);
+                mainWeight -= candidate.weight;
+                evictions.increment();
+                return;
+            }
+        }
+
+        synchronized boolean remove(K key) {
+            Node<V> node = window.remove(key);
+            if (node != null) {
+                windowWeight -= node.weight;
+                return true;
+            }
+            node = main.remove(key);
+            if (node != null) {
+                mainWeight -= node.weight;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Evicts the eldest entry of the window, or of the main region once
+         * the window is empty.
+         *
+         * @return the weight of the evicted entry, or -1 if the segment is
+         * empty.
+         */
+        synchronized long evictEldest(LongAdder evictions) {
+            LinkedHashMap<K, Node<V>> region = window.isEmpty() ? main : window;
+            Iterator<Map.Entry<K, Node<V>>> it = region.entrySet().iterator();
+            if (!it.hasNext()) {
+                return -1;
+            }
+            int weight = it.next().getValue().weight;
+            it.remove();
+            if (region == window) {
+                windowWeight -= weight;
+            } else {
+                mainWeight -= weight;
+            }
+            evictions.increment();
+            return weight;
+        }
+
+        synchronized int removeIf(Predicate<? super K> filter) {
+            return removeIf(window, filter, true) + removeIf(main, filter, false);
+        }
+
+        private int removeIf(LinkedHashMap<K, Node<V>> region, Predicate<? super K> filter, boolean isWindow) {
+            int removed = 0;
+            Iterator<Map.Entry<K, Node<V>>> it = region.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<K, Node<V>> entry = it.next();
+                if (filter.test(entry.getKey())) {
+                    it.remove();
+                    if (isWindow) {
+                        windowWeight -= entry.getValue().weight;
+                    } else {
+                        mainWeight -= entry.getValue().weight;
+                    }
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        synchronized int clear() {
+            int removed = window.size() + main.size();
+            window.clear();
+            main.clear();
+            windowWeight = 0;
+            mainWeight = 0;
+            return removed;
+        }
+
+        synchronized int size() {
+            return window.size() + main.size();
+        }
+
+        synchronized List<Map.Entry<K, V>> entries() {
+            List<Map.Entry<K, V>> entries = new ArrayList<>(window.size() + main.size());
+            for (Map.Entry<K, Node<V>> entry : main.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value));
+            }
+            for (Map.Entry<K, Node<V>> entry : window.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value));
+            }
+            return entries;
+        }
+
+        synchronized long weight() {
+            return windowWeight + mainWeight;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.cache;
+
+/**
+ * Calculates the weight of a cache entry. The weight is used to bound the
+ * total size of a {@link SymbolCache}, and is usually the approximate number of
+ * bytes the entry holds on to.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of a cache entry. The weight is computed once when the
+     * entry is inserted and must not change afterwards.
+     *
+     * @param key the entry key.
+     * @param value the entry value.
+     *
+     * @return the non-negative weight of the entry.
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.common;
+
+import java.io.IOException;
+
+/**
+ * Signals a symbol code that is already known to be unrecognized.
+ * <p>
+ * The renderer remembers symbol codes that failed to parse and rejects repeated
+ * requests for them with this exception instead of parsing them again. The
+ * exception carries the message of the original failure but no stack trace,
+ * so throwing it costs little more than allocating it.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class InvalidSymbolCodeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidSymbolCodeException(String message) {
+        super(message);
+    }
+
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -15,13 +15,29 @@
  */
 package com.phyzicsz.rocket.symbol.render;
 
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.cache.MemoryGovernor;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
 import javax.imageio.ImageIO;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,25 +101,355 @@ import org.slf4j.LoggerFactory;
  * are drawn in red and friendly symbols are drawn in green could be implemented
  * by creating white icons, and then multiplying by either red or green when the
  * retriever constructs the icon.
+ * <h2>Component caching</h2>
+ * <p>
+ * Decoded images are kept in a bounded cache keyed by their resource path, so
+ * each component is read from the symbol repository and decoded only once
+ * while it stays in use. The size of the cache is set through
+ * {@link RenderConfiguration#withComponentCacheBytes(long)}. Because callers
+ * are free to modify the images they get back, {@link #readImage(String)
+ * readImage} always returns a private copy of the cached image. Gray
+ * components, which are almost all of them, are cached as
+ * {@link ComponentRaster alpha and luminance planes} at half their decoded
+ * size and are tinted straight from the planes. Only the bounds of the pixels
+ * a component covers are kept, so tinting and compositing skip its
+ * transparent margins.
+ * <p>
+ * Behind the decoded components sits a much larger cache of
+ * {@link CompressedRaster compressed rasters}. A component that was evicted
+ * from the decoded cache is inflated from its compressed raster rather than
+ * decoded from PNG again, and the whole repository fits into the compressed
+ * cache at a fraction of its decoded size.
+ * <p>
+ * Components are almost always tinted before they are drawn, and the set of
+ * tint colors is small, so {@link #readTintedComponent(String, java.awt.Color)
+ * readTintedComponent} additionally caches components that have already been
+ * multiplied by a color. {@link #drawComponent(ComponentRaster, BufferedImage)
+ * drawComponent} draws them into a symbol within their bounds.
+ * <p>
+ * Components that do not exist are remembered as well, so a request for a
+ * symbol whose component is missing fails without searching the repository
+ * again.
+ * <h2>Asset updates</h2>
+ * <p>
+ * The {@link AssetCatalog} records a content hash for every asset. When the
+ * symbol repository is patched, {@link #refreshAssets()} compares the hashes
+ * with the previous scan and evicts only the cached components, tinted
+ * components and composites built from the assets that changed.
+ * <h2>Asset pack</h2>
+ * <p>
+ * Instead of decoding the PNGs of the repository, components can be read from
+ * an {@link AssetPack} of pre-decoded rasters mapped into memory, see
+ * {@link RenderConfiguration#withAssetPackPath(java.nio.file.Path)}. The pack
+ * should be built from the deployed repository with
+ * {@link #writeAssetPack(java.nio.file.Path, boolean)}. The pack records the
+ * content hash of every asset, and the renderer takes its asset catalog from
+ * the pack instead of reading the repository. {@link #refreshAssets()} scans
+ * the repository and reads the assets that differ from the pack from the
+ * repository again.
+ * Without a configured path, the pack compiled by the rocket-symbol-assets
+ * module is used when its jar is on the class path, see
+ * {@link RenderConfiguration#withAssetPackResource(String)}.
+ * <h2>Memory budget</h2>
+ * <p>
+ * The component caches, and the caches of subclasses and of the symbol
+ * service, register with a shared {@link MemoryGovernor}. Each registers with
+ * one of the tier values below; under a budget or heap pressure the tiers of
+ * lower value are shrunk first. Composited symbols go first, then tinted
+ * components, then decoded components, which are read again from the asset
+ * pack or inflated from their compressed copies without decoding a PNG. The
+ * compressed components and the encoded images, which hold the most work per
+ * byte, are released last. A renderer that is no
+ * longer used should be {@link #close() closed}, so its governor stops
+ * listening for heap pressure.
  *
  * @author phyzicsz <phyzics.z@gmail.com>
  */
-public abstract class AbstractMilStdSymbolRenderer implements SymbolRenderer {
+public abstract class AbstractMilStdSymbolRenderer implements SymbolRenderer, Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractMilStdSymbolRenderer.class);
+
+    /**
+     * Memory governor value of fully composited symbols.
+     */
+    protected static final int SYMBOL_TIER_VALUE = 10;
+
+    /**
+     * Memory governor value of fill and frame composites.
+     */
+    protected static final int BASE_LAYER_TIER_VALUE = 20;
+
+    /**
+     * Memory governor value of tinted components.
+     */
+    protected static final int TINTED_COMPONENT_TIER_VALUE = 30;
+
+    /**
+     * Memory governor value of decoded components.
+     */
+    protected static final int COMPONENT_TIER_VALUE = 40;
+
+    /**
+     * Memory governor value of compressed components. They are compact and
+     * save a PNG decode each.
+     */
+    protected static final int COMPRESSED_COMPONENT_TIER_VALUE = 45;
+
+    /**
+     * Memory governor value of encoded images, which are the most expensive
+     * to rebuild and the most compact.
+     */
+    public static final int ENCODED_TIER_VALUE = 50;
+
     /**
      * Path in the file system or network to the symbol repository.
      */
     protected final String baseImagePath = "/symbols";
 
+    /**
+     * Decoded components, keyed by resource path. Gray components are held as
+     * alpha and luminance planes; see {@link ComponentRaster}. Cached
+     * components are never handed out directly; see {@link #readImage(String)}.
+     */
+    protected final SymbolCache<String, ComponentRaster> componentCache;
+
+    /**
+     * Compressed copies of decoded components, keyed like the component
+     * cache.
+     */
+    private final SymbolCache<String, CompressedRaster> compressedComponentCache;
+
+    /**
+     * Components already multiplied by a tint color, keyed by path and ARGB
+     * value, and components drawn without a tint. See
+     * {@link #readTintedComponent(String, java.awt.Color)}.
+     */
+    private final SymbolCache<TintKey, ComponentRaster> tintedComponentCache;
+
+    /**
+     * Resource paths of components that are not in the symbol repository, so
+     * they are only looked up once.
+     */
+    private final SymbolCache<String, Boolean> missingComponentCache;
+
+    /**
+     * Pre-decoded components, or null if components are decoded from the
+     * symbol repository.
+     */
+    private final AssetPack assetPack;
+
+    /**
+     * Paths of assets that changed since the asset pack was built, relative
+     * to the symbol repository.
+     */
+    private final Set<String> stalePackAssets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Budget shared by the caches of this renderer and its symbol service.
+     */
+    protected final MemoryGovernor memoryGovernor;
+
+    /**
+     * Catalog of the symbol repository: the hashes recorded in the asset pack
+     * if there is one, otherwise scanned on first use.
+     */
+    private volatile AssetCatalog assetCatalog;
+
     public AbstractMilStdSymbolRenderer() {
+        this(new RenderConfiguration());
+    }
+
+    public AbstractMilStdSymbolRenderer(RenderConfiguration config) {
+        this.componentCache = new SymbolCache<>("components", config.getComponentCacheBytes(),
+                (path, raster) -> raster.getSize());
+        this.compressedComponentCache = new SymbolCache<>("compressedComponents",
+                config.getCompressedComponentCacheBytes(), (path, raster) -> raster.getCompressedSize());
+        this.tintedComponentCache = new SymbolCache<>("tintedComponents", config.getTintedComponentCacheBytes(),
+                (key, raster) -> raster.getSize());
+        this.missingComponentCache = new SymbolCache<>("missingComponents", Long.MAX_VALUE,
+                config.getNegativeCacheEntries(), (path, missing) -> 1);
+
+        this.assetPack = openAssetPack(config);
+        this.assetCatalog = assetPack != null ? assetPack.toCatalog(getBasePath()) : null;
+
+        this.memoryGovernor = new MemoryGovernor(config.getMemoryBudgetBytes(), config.getHeapUsageThreshold());
+        memoryGovernor.register(COMPONENT_TIER_VALUE, componentCache);
+        memoryGovernor.register(TINTED_COMPONENT_TIER_VALUE, tintedComponentCache);
+        memoryGovernor.register(COMPRESSED_COMPONENT_TIER_VALUE, compressedComponentCache);
+    }
+
+    /**
+     * Opens the configured asset pack, or the one on the class path. A pack
+     * that cannot be opened is logged and skipped rather than preventing the
+     * renderer from working.
+     */
+    private static AssetPack openAssetPack(RenderConfiguration config) {
+        Path path = config.getAssetPackPath();
+        if (path != null) {
+            try {
+                AssetPack pack = AssetPack.open(path);
+                logger.info("mapped {} symbol components from {}", pack.size(), path);
+                return pack;
+            } catch (IOException ex) {
+                logger.error("unable to open asset pack {}", path, ex);
+                return null;
+            }
+        }
 
+        String resource = config.getAssetPackResource();
+        URL url = resource != null ? AbstractMilStdSymbolRenderer.class.getResource(resource) : null;
+        if (url == null) {
+            return null;
+        }
+        try {
+            AssetPack pack = AssetPack.load(url);
+            logger.info("mapped {} symbol components ({} bytes) from {}", pack.size(), pack.getByteSize(), url);
+            return pack;
+        } catch (IOException ex) {
+            logger.error("unable to load asset pack {}", url, ex);
+            return null;
+        }
     }
 
     public String getBasePath() {
         return this.baseImagePath;
     }
 
+    /**
+     * Returns the asset pack components are read from.
+     *
+     * @return the asset pack, or null if none is configured.
+     */
+    public AssetPack getAssetPack() {
+        return assetPack;
+    }
+
+    /**
+     * Decodes every asset of the symbol repository and writes them to an
+     * asset pack.
+     *
+     * @param path the file to write.
+     * @param compress true to run-length encode the rasters, false to store
+     * them raw.
+     * @return the number of assets written.
+     * @throws IOException if the repository cannot be read or the file cannot
+     * be written.
+     */
+    public int writeAssetPack(Path path, boolean compress) throws IOException {
+        AssetCatalog catalog = this.getAssetCatalog();
+        try (AssetPack.Writer writer = new AssetPack.Writer(path, catalog.getVersion(), compress)) {
+            for (Map.Entry<String, Long> asset : catalog.getHashes().entrySet()) {
+                BufferedImage image = this.decodeImage(this.getBasePath() + "/" + asset.getKey());
+                if (image != null) {
+                    writer.add(asset.getKey(), asset.getValue(), image);
+                }
+            }
+            writer.commit();
+            return writer.getCount();
+        }
+    }
+
+    /**
+     * Returns the memory governor shared by the caches of this renderer.
+     * Other caches holding rendered symbols may register with it.
+     *
+     * @return the memory governor.
+     */
+    public MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    /**
+     * Stops the memory governor of the renderer from listening for heap
+     * pressure. The renderer remains usable, and its caches stay within the
+     * memory budget.
+     */
+    @Override
+    public void close() {
+        memoryGovernor.close();
+    }
+
+    /**
+     * Returns the catalog of the symbol repository. With an asset pack, the
+     * catalog holds the hashes the pack was built from, so the repository is
+     * not read until {@link #refreshAssets()}. Otherwise the repository is
+     * scanned on the first call, which reads every asset once.
+     *
+     * @return the asset catalog.
+     * @throws IOException if the repository cannot be read.
+     */
+    public AssetCatalog getAssetCatalog() throws IOException {
+        AssetCatalog catalog = assetCatalog;
+        if (catalog == null) {
+            synchronized (this) {
+                catalog = assetCatalog;
+                if (catalog == null) {
+                    catalog = AssetCatalog.scan(getClass(), getBasePath());
+                    assetCatalog = catalog;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Scans the symbol repository again and drops every cached entry derived
+     * from an asset that was added, removed or modified since the previous
+     * scan. Entries built from unchanged assets stay cached. Symbols rendered
+     * while the refresh runs may still be built from the previous assets.
+     *
+     * @return the paths of the changed assets, relative to the symbol
+     * repository. Empty if the repository had not been scanned before and
+     * there is no asset pack.
+     * @throws IOException if the repository cannot be read.
+     */
+    public Set<String> refreshAssets() throws IOException {
+        Set<String> changed;
+        synchronized (this) {
+            AssetCatalog previous = assetCatalog;
+            AssetCatalog current = AssetCatalog.scan(getClass(), getBasePath());
+            assetCatalog = current;
+            if (previous == null) {
+                return Collections.emptySet();
+            }
+            changed = current.changedSince(previous);
+        }
+
+        if (!changed.isEmpty()) {
+            logger.info("{} symbol assets changed, invalidating derived entries", changed.size());
+            this.invalidateAssets(changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Drops the cached entries derived from a set of assets. Subclasses that
+     * cache images built from components must extend this method.
+     *
+     * @param paths asset paths relative to the symbol repository.
+     */
+    protected void invalidateAssets(Set<String> paths) {
+        if (assetPack != null) {
+            stalePackAssets.addAll(paths);
+        }
+        for (String path : paths) {
+            String resourcePath = this.getBasePath() + "/" + path;
+            componentCache.invalidate(resourcePath);
+            compressedComponentCache.invalidate(resourcePath);
+            missingComponentCache.invalidate(resourcePath);
+        }
+        tintedComponentCache.invalidateIf(key -> paths.contains(key.getPath()));
+    }
+
+    /**
+     * Read an image from the symbol repository. The image is decoded at most
+     * once while it remains in the component cache; every call returns a new
+     * copy that the caller may modify.
+     *
+     * @param path Path of the image relative to the base image path.
+     *
+     * @return A copy of the image, or null if the image does not exist.
+     */
     protected BufferedImage readImage(String path) {
         if (path == null) {
             logger.error("retrieverPath is null");
@@ -115,17 +461,229 @@ public abstract class AbstractMilStdSymbolRenderer implements SymbolRenderer {
         sb.append("/");
         sb.append(path);
 
-         try (InputStream is = getClass().getResourceAsStream(sb.toString())) {
-             if (null != is) {
-                 return ImageIO.read(is);
-             }
-             return ImageIO.read(is);
-        }catch (IOException ex) {
+        ComponentRaster raster = componentCache.get(sb.toString(), this::loadComponentRaster);
+        return raster != null ? raster.toImage() : null;
+    }
+
+    /**
+     * Read an image from the symbol repository and multiply it by a color.
+     *
+     * @param path Path of the image relative to the base image path.
+     * @param color Color to multiply the image by, or null to read the image
+     * unchanged.
+     *
+     * @return A copy of the tinted image that the caller may modify, or null if
+     * the image does not exist.
+     *
+     * @see #readTintedComponent(String, java.awt.Color)
+     */
+    protected BufferedImage readTintedImage(String path, Color color) {
+        ComponentRaster raster = this.readTintedComponent(path, color);
+        return raster != null ? raster.toImage() : null;
+    }
+
+    /**
+     * Read a component from the symbol repository and multiply it by a color.
+     * The result is cached by path and color, so repeated requests for the
+     * same component do no per-pixel work. Planar components are multiplied
+     * by {@link ComponentRaster#tint(java.awt.Color)}, others by
+     * {@link #multiply(java.awt.image.BufferedImage, java.awt.Color) multiply};
+     * either way only the pixels within the bounds of the component are
+     * computed.
+     *
+     * @param path Path of the image relative to the base image path.
+     * @param color Color to multiply the image by, or null to read the image
+     * unchanged.
+     *
+     * @return The tinted component, which is interleaved and shared with other
+     * callers, or null if the image does not exist.
+     */
+    protected ComponentRaster readTintedComponent(String path, Color color) {
+        if (path == null) {
+            logger.error("retrieverPath is null");
+            throw new IllegalArgumentException("retrieverPath is null");
+        }
+
+        TintKey tintKey = color != null ? new TintKey(path, color.getRGB()) : TintKey.untinted(path);
+        return tintedComponentCache.get(tintKey, key -> {
+            ComponentRaster raster = componentCache.get(this.getBasePath() + "/" + key.getPath(),
+                    this::loadComponentRaster);
+            if (raster == null) {
+                return null;
+            }
+            if (color == null) {
+                return raster.toInterleaved();
+            }
+            if (raster.isPlanar()) {
+                return raster.tint(color);
+            }
+            BufferedImage trimmed = raster.getTrimmedImage();
+            if (trimmed == null) {
+                return raster;
+            }
+            trimmed = copyImage(trimmed);
+            this.multiply(trimmed, color);
+            return raster.withTrimmedImage(trimmed);
+        });
+    }
+
+    /**
+     * Indicates whether a component is known to be missing from the symbol
+     * repository. Only components that have been looked up before are known.
+     *
+     * @param path Path of the image relative to the base image path.
+     *
+     * @return true if an earlier lookup of the component found nothing.
+     */
+    protected boolean isMissingComponent(String path) {
+        return missingComponentCache.getIfPresent(this.getBasePath() + "/" + path) != null;
+    }
+
+    private ComponentRaster loadComponentRaster(String resourcePath) {
+        BufferedImage image = this.loadComponent(resourcePath);
+        return image != null ? ComponentRaster.of(image) : null;
+    }
+
+    /**
+     * Loads a component for the component cache: from the asset pack if one
+     * is configured and holds an up-to-date copy, otherwise by inflating it
+     * from the compressed component cache or by decoding it.
+     * Components that do not exist are remembered; a missing component is
+     * logged the first time it is looked up only.
+     */
+    private BufferedImage loadComponent(String resourcePath) {
+        if (assetPack != null) {
+            String asset = resourcePath.substring(this.getBasePath().length() + 1);
+            if (!stalePackAssets.contains(asset)) {
+                BufferedImage image = assetPack.read(asset);
+                if (image != null) {
+                    return image;
+                }
+            }
+        }
+
+        CompressedRaster compressed = compressedComponentCache.getIfPresent(resourcePath);
+        if (compressed != null) {
+            return compressed.inflate();
+        }
+        if (missingComponentCache.getIfPresent(resourcePath) != null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        BufferedImage image = this.decodeImage(resourcePath);
+        compressedComponentCache.recordLoad(System.nanoTime() - start);
+        if (image == null) {
+            logger.error("missing icon component: {}", resourcePath);
+            missingComponentCache.put(resourcePath, Boolean.TRUE);
+            return null;
+        }
+
+        compressed = CompressedRaster.compress(image);
+        if (compressed != null) {
+            compressedComponentCache.put(resourcePath, compressed);
+        }
+        return image;
+    }
+
+    /**
+     * Read and decode an image resource, bypassing the component cache.
+     *
+     * @param resourcePath absolute resource path of the image.
+     *
+     * @return The decoded image, or null if the image does not exist or cannot
+     * be decoded.
+     */
+    protected BufferedImage decodeImage(String resourcePath) {
+        try (InputStream is = getClass().getResourceAsStream(resourcePath)) {
+            if (null != is) {
+                return ImageIO.read(is);
+            }
+        } catch (IOException ex) {
             logger.error("ExceptionWhileReading", ex);
         }
         return null;
     }
 
+    /**
+     * Returns the hit, miss and eviction counts of the decoded component cache.
+     *
+     * @return a snapshot of the component cache statistics.
+     */
+    public CacheStats getComponentCacheStats() {
+        return componentCache.stats();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the compressed component
+     * cache.
+     *
+     * @return a snapshot of the compressed component cache statistics.
+     */
+    public CacheStats getCompressedComponentCacheStats() {
+        return compressedComponentCache.stats();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the tinted component cache.
+     *
+     * @return a snapshot of the tinted component cache statistics.
+     */
+    public CacheStats getTintedComponentCacheStats() {
+        return tintedComponentCache.stats();
+    }
+
+    /**
+     * Returns the statistics of the cache of components known to be missing.
+     *
+     * @return a snapshot of the missing component cache statistics.
+     */
+    public CacheStats getMissingComponentCacheStats() {
+        return missingComponentCache.stats();
+    }
+
+    /**
+     * Returns the statistics of every cache of the renderer, from the
+     * finished symbols down to the components they are drawn from.
+     *
+     * @return snapshots of the cache statistics.
+     */
+    public List<CacheStats> getCacheStats() {
+        List<CacheStats> stats = new ArrayList<>();
+        stats.add(componentCache.stats());
+        stats.add(tintedComponentCache.stats());
+        stats.add(compressedComponentCache.stats());
+        stats.add(missingComponentCache.stats());
+        return stats;
+    }
+
+    /**
+     * Create a deep copy of an image. The copy shares the color model of the
+     * source, so it is encoded exactly like the source.
+     *
+     * @param src Image to copy.
+     *
+     * @return A new image with the same type and pixels as {@code src}.
+     */
+    protected static BufferedImage copyImage(BufferedImage src) {
+        ColorModel cm = src.getColorModel();
+        WritableRaster raster = src.copyData(src.getRaster().createCompatibleWritableRaster());
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Computes the number of bytes held by the pixel data of an image.
+     *
+     * @param image Image to measure.
+     *
+     * @return The size of the image data in bytes.
+     */
+    protected static int imageWeight(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long bits = (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType());
+        return (int) Math.min(Integer.MAX_VALUE, bits / 8);
+    }
+
     /**
      * Draw one image into another image. The image is drawn at location (0, 0).
      *
@@ -158,6 +716,46 @@ public abstract class AbstractMilStdSymbolRenderer implements SymbolRenderer {
         return dest;
     }
 
+    /**
+     * Draw a component into an image. Only the pixels within the bounds of the
+     * component are drawn; the rest of it is transparent.
+     *
+     * @param src Interleaved component to draw, as returned by
+     * {@link #readTintedComponent(String, java.awt.Color)}.
+     * @param dest Image to draw into, as large as the component.
+     *
+     * @return {@code dest} BufferedImage.
+     */
+    protected BufferedImage drawComponent(ComponentRaster src, BufferedImage dest) {
+        if (src == null) {
+            logger.error("src is null");
+            throw new IllegalArgumentException("src is null");
+        }
+
+        if (dest == null) {
+            logger.error("dest is null");
+            throw new IllegalArgumentException("dest is null");
+        }
+
+        BufferedImage trimmed = src.getTrimmedImage();
+        if (trimmed == null) {
+            return dest;
+        }
+
+        Rectangle bounds = src.getBounds();
+        Graphics2D g = null;
+        try {
+            g = dest.createGraphics();
+            g.drawImage(trimmed, bounds.x, bounds.y, null);
+        } finally {
+            if (g != null) {
+                g.dispose();
+            }
+        }
+
+        return dest;
+    }
+
     /**
      * Multiply each pixel in an image by a color. White pixels are replaced by
      * the multiplication color, black pixels are unaffected.
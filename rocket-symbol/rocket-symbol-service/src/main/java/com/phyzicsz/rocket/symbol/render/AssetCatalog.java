@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Identifies the set of symbol assets a renderer draws from.
+ * <p>
+ * The catalog walks every resource below the symbol repository, whether it is
+ * a directory on the class path or a directory inside a jar, and hashes the
+ * content of each one. Anything derived from a set of assets can record their
+ * hashes and later be recognized as stale by comparing them with a newer
+ * catalog; {@link #changedSince(AssetCatalog)} lists the assets that differ
+ * between two catalogs.
+ * <p>
+ * The version of the catalog digests the relative path and hash of every
+ * asset in path order. It changes whenever an asset is added, removed or
+ * modified.
+ * <p>
+ * A catalog can also be taken from an {@link AssetPack}, which records the
+ * version and hashes of the repository it was built from.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class AssetCatalog {
+
+    private final String basePath;
+    private final Map<String, Long> hashes;
+    private final long version;
+
+    AssetCatalog(String basePath, Map<String, Long> hashes, long version) {
+        this.basePath = basePath;
+        this.hashes = Collections.unmodifiableMap(hashes);
+        this.version = version;
+    }
+
+    /**
+     * Scans the symbol repository visible to a class.
+     *
+     * @param anchor class whose class loader is used to locate the assets.
+     * @param basePath absolute resource path of the symbol repository, for
+     * example {@code /symbols}.
+     * @return the catalog.
+     * @throws IOException if the repository does not exist or cannot be read.
+     */
+    public static AssetCatalog scan(Class<?> anchor, String basePath) throws IOException {
+        URL url = anchor.getResource(basePath);
+        if (url == null) {
+            throw new IOException("symbol repository not found: " + basePath);
+        }
+
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException ex) {
+            throw new IOException("invalid symbol repository location: " + url, ex);
+        }
+
+        if ("jar".equals(uri.getScheme())) {
+            try (FileSystem fs = newJarFileSystem(uri)) {
+                return scan(basePath, fs.provider().getPath(uri));
+            } catch (FileSystemAlreadyExistsException ex) {
+                return scan(basePath, Paths.get(uri));
+            }
+        }
+        return scan(basePath, Paths.get(uri));
+    }
+
+    private static FileSystem newJarFileSystem(URI uri) throws IOException {
+        return FileSystems.newFileSystem(uri, Collections.emptyMap());
+    }
+
+    /**
+     * Scans a symbol repository in a directory.
+     *
+     * @param basePath resource path the repository is served from, for
+     * example {@code /symbols}.
+     * @param root directory holding the repository.
+     * @return the catalog.
+     * @throws IOException if the repository cannot be read.
+     */
+    public static AssetCatalog scan(String basePath, Path root) throws IOException {
+        List<String> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        Map<String, Long> hashes = new TreeMap<>();
+        MessageDigest digest = sha256();
+        for (String file : files) {
+            digest.update(Files.readAllBytes(root.resolve(file)));
+            hashes.put(file, toLong(digest.digest()));
+        }
+
+        for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, entry.getValue()));
+        }
+        return new AssetCatalog(basePath, hashes, toLong(digest.digest()));
+    }
+
+    private static long toLong(byte[] sha) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (sha[i] & 0xff);
+        }
+        return value;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    public String getBasePath() {
+        return basePath;
+    }
+
+    /**
+     * Indicates the number of assets in the repository.
+     *
+     * @return the asset count.
+     */
+    public int getAssetCount() {
+        return hashes.size();
+    }
+
+    /**
+     * Returns the content hash of an asset: the first 64 bits of the SHA-256
+     * digest of its bytes.
+     *
+     * @param path path of the asset relative to the symbol repository, for
+     * example {@code frames/tacsym/-f-p-----------.png}.
+     * @return the hash, or zero if the asset does not exist.
+     */
+    public long getHash(String path) {
+        Long hash = hashes.get(path);
+        return hash != null ? hash : 0;
+    }
+
+    /**
+     * Returns the content hash of every asset, keyed by path relative to the
+     * symbol repository.
+     *
+     * @return an unmodifiable map of asset paths to hashes, in path order.
+     */
+    public Map<String, Long> getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Lists the assets that were added, removed or modified since an earlier
+     * catalog of the same repository.
+     *
+     * @param previous the earlier catalog.
+     * @return the paths of the assets that differ, relative to the symbol
+     * repository.
+     */
+    public Set<String> changedSince(AssetCatalog previous) {
+        Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+            if (!entry.getValue().equals(previous.hashes.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String path : previous.hashes.keySet()) {
+            if (!hashes.containsKey(path)) {
+                changed.add(path);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the version of the asset set: the first 64 bits of a SHA-256
+     * digest over the path and content hash of every asset.
+     *
+     * @return the asset set version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "AssetCatalog{" + "basePath=" + basePath + ", assetCount=" + hashes.size()
+                + ", version=" + Long.toHexString(version) + '}';
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A single file holding the decoded rasters of the symbol repository.
+ * <p>
+ * Reading a component from the class path means a resource lookup and a PNG
+ * decode. An asset pack holds every component already decoded, so reading one
+ * is a copy out of a memory-mapped file. The layout is
+ * <pre>
+ * header:  int magic | int format | int entryCount | int reserved
+ *          | long assetVersion | long indexOffset
+ * payload: one raster per entry, each starting at a multiple of 8
+ * index:   entry... with
+ *          short pathLength | path (UTF-8) | long hash | short width
+ *          | short height | byte encoding | long offset | int length
+ * </pre>
+ * Paths are relative to the symbol repository and hashes are content hashes
+ * of the encoded assets, like those of the {@link AssetCatalog}, so the
+ * rasters of a pack built from another version of the repository can be
+ * checked one by one. A raster is stored either raw, as the four bytes per
+ * pixel of a {@code TYPE_4BYTE_ABGR} image, or run-length encoded like a
+ * {@link CompressedRaster}. Raw rasters restore with a single bulk copy;
+ * encoded rasters make a pack of the complete repository about 40MB instead of
+ * 690MB and restore in a few microseconds more.
+ * <p>
+ * An asset pack is immutable and safe to share between threads.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class AssetPack {
+
+    private static final int MAGIC = 0x52534150;
+    private static final int FORMAT = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int ALIGNMENT = 8;
+    private static final int PIXEL_BYTES = 4;
+    /**
+     * Size of an index entry after its path.
+     */
+    private static final int ENTRY_BYTES = 25;
+
+    static final byte RAW = 0;
+    static final byte RUN_LENGTH = 1;
+
+    private static final ColorModel ABGR_COLOR_MODEL = new ComponentColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{8, 8, 8, 8}, true, false,
+            Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+    private static final int[] ABGR_BAND_OFFSETS = {3, 2, 1, 0};
+
+    /**
+     * Packs copied out of jars, keyed by URL.
+     */
+    private static final Map<String, AssetPack> LOADED = new HashMap<>();
+
+    private final ByteBuffer buffer;
+    private final long assetVersion;
+    private final Map<String, Entry> index;
+
+    private AssetPack(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not an asset pack");
+        }
+        int format = buffer.getInt(4);
+        if (format != FORMAT) {
+            throw new IOException("unsupported asset pack format " + format);
+        }
+        int count = buffer.getInt(8);
+        this.assetVersion = buffer.getLong(16);
+        long indexOffset = buffer.getLong(24);
+        if (count < 0 || indexOffset < HEADER_BYTES || indexOffset > buffer.limit()) {
+            throw new IOException("corrupt asset pack");
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position((int) indexOffset);
+        if (count > in.remaining() / (Short.BYTES + ENTRY_BYTES)) {
+            throw new IOException("corrupt asset pack");
+        }
+        Map<String, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            if (in.remaining() < Short.BYTES) {
+                throw new IOException("corrupt asset pack");
+            }
+            byte[] path = new byte[in.getShort() & 0xffff];
+            if (in.remaining() < path.length + ENTRY_BYTES) {
+                throw new IOException("corrupt asset pack");
+            }
+            in.get(path);
+            Entry entry = new Entry(in.getLong(), in.getShort() & 0xffff, in.getShort() & 0xffff, in.get(),
+                    in.getLong(), in.getInt());
+            if (entry.offset < HEADER_BYTES || entry.length < 0 || entry.offset + entry.length > indexOffset
+                    || entry.encoding == RAW && entry.length < entry.width * entry.height * PIXEL_BYTES) {
+                throw new IOException("corrupt asset pack");
+            }
+            entries.put(new String(path, StandardCharsets.UTF_8), entry);
+        }
+        this.index = entries;
+    }
+
+    /**
+     * Maps an asset pack file into memory. The file must not be modified
+     * while the pack is in use.
+     *
+     * @param path the file.
+     * @return the asset pack.
+     * @throws IOException if the file cannot be read or is not an asset pack.
+     */
+    public static AssetPack open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new AssetPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Loads an asset pack from a URL, typically a class path resource. Packs
+     * in the file system are mapped into memory like with {@link #open(Path)};
+     * packs inside a jar are copied to a temporary file first, so they are
+     * mapped as well and stay off the heap. The copy is made once per JVM:
+     * later loads of the same URL return the pack already mapped.
+     *
+     * @param url location of the pack.
+     * @return the asset pack.
+     * @throws IOException if the pack cannot be read or is not an asset pack.
+     */
+    public static AssetPack load(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return open(Paths.get(url.toURI()));
+            } catch (URISyntaxException ex) {
+                throw new IOException("invalid asset pack location: " + url, ex);
+            }
+        }
+
+        String key = url.toExternalForm();
+        synchronized (LOADED) {
+            AssetPack pack = LOADED.get(key);
+            if (pack == null) {
+                pack = copyAndOpen(url);
+                LOADED.put(key, pack);
+            }
+            return pack;
+        }
+    }
+
+    private static AssetPack copyAndOpen(URL url) throws IOException {
+        Path tmp = Files.createTempFile("rocket-symbol", ".pack");
+        try {
+            try (InputStream in = url.openStream()) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return open(tmp);
+        } finally {
+            // The mapping outlives the file where the platform allows deleting a mapped file.
+            try {
+                Files.delete(tmp);
+            } catch (IOException ex) {
+                tmp.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Indicates the version of the symbol repository the pack was built from.
+     *
+     * @return the {@link AssetCatalog#getVersion() asset catalog version}.
+     */
+    public long getAssetVersion() {
+        return assetVersion;
+    }
+
+    /**
+     * Indicates the size of the pack. The pack is mapped into memory outside
+     * of the heap.
+     *
+     * @return the number of bytes mapped.
+     */
+    public long getByteSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Indicates the number of rasters in the pack.
+     *
+     * @return the entry count.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the paths of all rasters in the pack.
+     *
+     * @return the paths relative to the symbol repository.
+     */
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public boolean contains(String path) {
+        return index.containsKey(path);
+    }
+
+    /**
+     * Returns the content hash of the asset a raster was decoded from.
+     *
+     * @param path path of the asset relative to the symbol repository.
+     * @return the {@link AssetCatalog#getHash(String) catalog hash} of the
+     * asset when the pack was built, or zero if the pack does not hold it.
+     */
+    public long getHash(String path) {
+        Entry entry = index.get(path);
+        return entry != null ? entry.hash : 0;
+    }
+
+    /**
+     * Creates the catalog of the repository the pack was built from, so the
+     * repository does not have to be scanned.
+     *
+     * @param basePath resource path the repository is served from.
+     * @return a catalog with the version and asset hashes of the pack.
+     */
+    AssetCatalog toCatalog(String basePath) {
+        Map<String, Long> hashes = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : index.entrySet()) {
+            hashes.put(entry.getKey(), entry.getValue().hash);
+        }
+        return new AssetCatalog(basePath, hashes, assetVersion);
+    }
+
+    /**
+     * Restores a raster.
+     *
+     * @param path path of the asset relative to the symbol repository.
+     * @return a new {@code TYPE_4BYTE_ABGR} image, or null if the pack does
+     * not hold the asset.
+     */
+    public BufferedImage read(String path) {
+        Entry entry = index.get(path);
+        if (entry == null) {
+            return null;
+        }
+
+        byte[] pixels = new byte[entry.width * entry.height * PIXEL_BYTES];
+        ByteBuffer src = buffer.duplicate();
+        src.position((int) entry.offset);
+        src.limit((int) entry.offset + entry.length);
+        if (entry.encoding == RUN_LENGTH) {
+            CompressedRaster.inflate(src, pixels);
+        } else {
+            src.get(pixels);
+        }
+
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(pixels, pixels.length),
+                entry.width, entry.height, entry.width * PIXEL_BYTES, PIXEL_BYTES, ABGR_BAND_OFFSETS, null);
+        return new BufferedImage(ABGR_COLOR_MODEL, raster, false, null);
+    }
+
+    @Override
+    public String toString() {
+        return "AssetPack{" + "assetVersion=" + Long.toHexString(assetVersion) + ", size=" + index.size() + '}';
+    }
+
+    private static final class Entry {
+
+        final long hash;
+        final int width;
+        final int height;
+        final byte encoding;
+        final long offset;
+        final int length;
+
+        Entry(long hash, int width, int height, byte encoding, long offset, int length) {
+            this.hash = hash;
+            this.width = width;
+            this.height = height;
+            this.encoding = encoding;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Writes an asset pack. Rasters are appended as they are added and the
+     * index is written on {@link #commit()}, which replaces the target file.
+     * A writer closed without being committed, for example because adding a
+     * raster failed, discards what it has written and leaves the target file
+     * untouched.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final long assetVersion;
+        private final boolean compress;
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private long position = HEADER_BYTES;
+        private int count;
+        private boolean committed;
+
+        /**
+         * Starts writing an asset pack.
+         *
+         * @param target the file to write.
+         * @param assetVersion version of the symbol repository the rasters
+         * come from.
+         * @param compress true to run-length encode the rasters, false to
+         * store them raw.
+         * @throws IOException if the file cannot be created.
+         */
+        public Writer(Path target, long assetVersion, boolean compress) throws IOException {
+            this.target = target;
+            this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.assetVersion = assetVersion;
+            this.compress = compress;
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Adds a raster.
+         *
+         * @param path path of the asset relative to the symbol repository.
+         * @param hash {@link AssetCatalog#getHash(String) content hash} of the
+         * asset.
+         * @param image the decoded asset. Images of another type are converted
+         * to {@code TYPE_4BYTE_ABGR}.
+         * @throws IOException if the file cannot be written.
+         */
+        public void add(String path, long hash, BufferedImage image) throws IOException {
+            BufferedImage abgr = abgr(image);
+            byte[] payload;
+            byte encoding;
+            if (compress) {
+                payload = CompressedRaster.compress(abgr).getData();
+                encoding = RUN_LENGTH;
+            } else {
+                payload = ((DataBufferByte) abgr.getRaster().getDataBuffer()).getData();
+                encoding = RAW;
+            }
+
+            long offset = position;
+            ByteBuffer src = ByteBuffer.wrap(payload);
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+            position = (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            indexOut.writeShort(pathBytes.length);
+            indexOut.write(pathBytes);
+            indexOut.writeLong(hash);
+            indexOut.writeShort(image.getWidth());
+            indexOut.writeShort(image.getHeight());
+            indexOut.writeByte(encoding);
+            indexOut.writeLong(offset);
+            indexOut.writeInt(payload.length);
+            count++;
+        }
+
+        private static BufferedImage abgr(BufferedImage image) {
+            if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR && CompressedRaster.isSupported(image)) {
+                return image;
+            }
+            BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+                    BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D g = converted.createGraphics();
+            try {
+                g.drawImage(image, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+            return converted;
+        }
+
+        /**
+         * Indicates the number of rasters added so far.
+         *
+         * @return the entry count.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Writes the index and the header and moves the pack into place. No
+         * rasters can be added afterwards.
+         *
+         * @throws IOException if the file cannot be written.
+         */
+        public void commit() throws IOException {
+            long indexOffset = position;
+            ByteBuffer indexBytes = ByteBuffer.wrap(index.toByteArray());
+            while (indexBytes.hasRemaining()) {
+                position += channel.write(indexBytes, position);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT).putInt(count).putInt(0).putLong(assetVersion)
+                    .putLong(indexOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.close();
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Releases the file. A pack that was not committed is deleted.
+         *
+         * @throws IOException if the file cannot be closed or deleted.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    channel.close();
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        }
+    }
+}
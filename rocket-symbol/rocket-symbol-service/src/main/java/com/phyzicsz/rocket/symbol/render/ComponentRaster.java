@@ -0,0 +1,415 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * A decoded symbol component as held by the component caches.
+ * <p>
+ * Every component is drawn on a canvas of the symbol size, but most of them
+ * cover only a small part of it. A component raster records the tight bounds
+ * of the pixels that are not fully zero, that is transparent black, and keeps
+ * only the pixels within those bounds. The rest of the canvas is known to be
+ * zero, so tinting and drawing a component touch the pixels within its bounds
+ * only; see {@link #getBounds()}.
+ * <p>
+ * Components are only ever drawn after being multiplied by a tint color, and
+ * almost all of them are gray: their red, green and blue samples are equal in
+ * every pixel. A gray component is kept as two planes of one byte per pixel,
+ * alpha and luminance, which is half the size of the decoded image. Tinting
+ * reads the planes through one lookup table per channel and writes the
+ * tinted pixels straight into a new image, with exactly the result of
+ * {@link AbstractMilStdSymbolRenderer#multiply(BufferedImage, Color)}.
+ * <p>
+ * Components with colors of their own keep their interleaved pixels and are
+ * tinted by the renderer as before; see {@link #isPlanar()}. Images whose
+ * layout is not four interleaved 8-bit samples per pixel are kept whole.
+ * Either way the images a component raster returns have the type and pixels
+ * of the image it was created from.
+ * <p>
+ * Component rasters are immutable and safe to share between threads.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class ComponentRaster {
+
+    private static final int PIXEL_BYTES = 4;
+    private static final int LEVELS = 256;
+
+    private final ColorModel colorModel;
+
+    /**
+     * Sample model of the whole canvas.
+     */
+    private final SampleModel sampleModel;
+
+    private final Rectangle bounds;
+
+    /**
+     * Byte offsets of the red, green, blue and alpha samples within a pixel,
+     * or null if the image is kept whole.
+     */
+    private final int[] bandOffsets;
+
+    /**
+     * Alpha and luminance of the pixels within the bounds if the component is
+     * planar, otherwise null.
+     */
+    private final byte[] alpha;
+    private final byte[] luminance;
+
+    /**
+     * Pixels within the bounds if the component is not planar. Null if it is
+     * planar or the bounds are empty.
+     */
+    private final BufferedImage image;
+
+    private ComponentRaster(ColorModel colorModel, SampleModel sampleModel, Rectangle bounds, int[] bandOffsets,
+            byte[] alpha, byte[] luminance, BufferedImage image) {
+        this.colorModel = colorModel;
+        this.sampleModel = sampleModel;
+        this.bounds = bounds;
+        this.bandOffsets = bandOffsets;
+        this.alpha = alpha;
+        this.luminance = luminance;
+        this.image = image;
+    }
+
+    /**
+     * Creates the component raster of an image.
+     *
+     * @param image Decoded component. It is kept as it is if its layout is not
+     * supported, so the caller must not modify it afterwards.
+     *
+     * @return The component raster.
+     */
+    public static ComponentRaster of(BufferedImage image) {
+        ColorModel cm = image.getColorModel();
+        SampleModel sm = image.getSampleModel();
+        if (!CompressedRaster.isSupported(image) || sm.getNumBands() != PIXEL_BYTES) {
+            return new ComponentRaster(cm, sm, new Rectangle(0, 0, image.getWidth(), image.getHeight()), null,
+                    null, null, image);
+        }
+
+        int[] offsets = ((PixelInterleavedSampleModel) sm).getBandOffsets();
+        byte[] src = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        Rectangle bounds = contentBounds(src, image.getWidth(), image.getHeight());
+        if (isPlainRgba(cm)) {
+            ComponentRaster planar = planes(cm, sm, bounds, offsets, src);
+            if (planar != null) {
+                return planar;
+            }
+        }
+
+        byte[] pixels = new byte[bounds.width * bounds.height * PIXEL_BYTES];
+        int stride = image.getWidth() * PIXEL_BYTES;
+        int row = bounds.width * PIXEL_BYTES;
+        for (int y = 0; y < bounds.height; y++) {
+            System.arraycopy(src, (bounds.y + y) * stride + bounds.x * PIXEL_BYTES, pixels, y * row, row);
+        }
+        return new ComponentRaster(cm, sm, bounds, offsets, null, null, trimmedImage(cm, sm, bounds, pixels));
+    }
+
+    /**
+     * Finds the bounds of the pixels that have a non-zero sample.
+     */
+    private static Rectangle contentBounds(byte[] src, int width, int height) {
+        int left = width;
+        int right = -1;
+        int top = -1;
+        int bottom = -1;
+        for (int y = 0, p = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, p += PIXEL_BYTES) {
+                if ((src[p] | src[p + 1] | src[p + 2] | src[p + 3]) != 0) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    if (top < 0) {
+                        top = y;
+                    }
+                    bottom = y;
+                }
+            }
+        }
+        if (right < 0) {
+            return new Rectangle();
+        }
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+     * Splits the pixels within the bounds into alpha and luminance planes.
+     *
+     * @return the planar raster, or null if a pixel is not gray.
+     */
+    private static ComponentRaster planes(ColorModel cm, SampleModel sm, Rectangle bounds, int[] offsets,
+            byte[] src) {
+        int r = offsets[0];
+        int g = offsets[1];
+        int b = offsets[2];
+        int a = offsets[3];
+        int stride = sm.getWidth() * PIXEL_BYTES;
+        byte[] alpha = new byte[bounds.width * bounds.height];
+        byte[] luminance = new byte[alpha.length];
+        for (int y = 0, i = 0; y < bounds.height; y++) {
+            int p = (bounds.y + y) * stride + bounds.x * PIXEL_BYTES;
+            for (int x = 0; x < bounds.width; x++, i++, p += PIXEL_BYTES) {
+                byte red = src[p + r];
+                if (src[p + g] != red || src[p + b] != red) {
+                    return null;
+                }
+                alpha[i] = src[p + a];
+                luminance[i] = red;
+            }
+        }
+        return new ComponentRaster(cm, sm, bounds, offsets, alpha, luminance, null);
+    }
+
+    /**
+     * Indicates whether a color model describes four non premultiplied 8-bit
+     * sRGB samples, so that reading and writing them is the same as
+     * {@link BufferedImage#getRGB(int, int)} and
+     * {@link BufferedImage#setRGB(int, int, int)}.
+     */
+    private static boolean isPlainRgba(ColorModel cm) {
+        if (!(cm instanceof ComponentColorModel) || !cm.hasAlpha() || cm.isAlphaPremultiplied()
+                || cm.getNumComponents() != PIXEL_BYTES || cm.getTransferType() != DataBuffer.TYPE_BYTE
+                || !cm.getColorSpace().isCS_sRGB()) {
+            return false;
+        }
+        for (int size : cm.getComponentSize()) {
+            if (size != Byte.SIZE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether the component is held as alpha and luminance planes.
+     *
+     * @return true for a gray component, false if its pixels are kept
+     * interleaved.
+     */
+    public boolean isPlanar() {
+        return alpha != null;
+    }
+
+    public int getWidth() {
+        return sampleModel.getWidth();
+    }
+
+    public int getHeight() {
+        return sampleModel.getHeight();
+    }
+
+    /**
+     * Indicates the part of the canvas the component covers. Every pixel
+     * outside the bounds is transparent black.
+     *
+     * @return the bounds, possibly empty, in canvas coordinates.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * Indicates the number of bytes of pixel data held by the component.
+     *
+     * @return the size in bytes.
+     */
+    public int getSize() {
+        if (alpha != null) {
+            return alpha.length + luminance.length;
+        }
+        return image != null ? AbstractMilStdSymbolRenderer.imageWeight(image) : 0;
+    }
+
+    /**
+     * Returns the pixels within the bounds of an interleaved component. The
+     * image is shared and must not be modified.
+     *
+     * @return the image, or null if the bounds are empty.
+     * @throws IllegalStateException if the component is planar.
+     */
+    BufferedImage getTrimmedImage() {
+        if (alpha != null) {
+            throw new IllegalStateException("component is planar");
+        }
+        return image;
+    }
+
+    /**
+     * Creates an interleaved component with the bounds of this one and other
+     * pixels.
+     *
+     * @param trimmed pixels within the bounds, laid out like
+     * {@link #getTrimmedImage()}. The component takes ownership of the image.
+     *
+     * @return the new component.
+     */
+    ComponentRaster withTrimmedImage(BufferedImage trimmed) {
+        return new ComponentRaster(colorModel, sampleModel, bounds, bandOffsets, null, null, trimmed);
+    }
+
+    /**
+     * Restores the decoded image.
+     *
+     * @return A new image with the type and pixels of the original image. The
+     * caller owns the image and may modify it.
+     */
+    public BufferedImage toImage() {
+        if (bandOffsets == null) {
+            return AbstractMilStdSymbolRenderer.copyImage(image);
+        }
+
+        byte[] pixels = new byte[getWidth() * getHeight() * PIXEL_BYTES];
+        int stride = getWidth() * PIXEL_BYTES;
+        if (alpha == null) {
+            if (image != null) {
+                byte[] src = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                int row = bounds.width * PIXEL_BYTES;
+                for (int y = 0; y < bounds.height; y++) {
+                    System.arraycopy(src, y * row, pixels, (bounds.y + y) * stride + bounds.x * PIXEL_BYTES, row);
+                }
+            }
+            return newImage(colorModel, sampleModel, pixels);
+        }
+
+        int r = bandOffsets[0];
+        int g = bandOffsets[1];
+        int b = bandOffsets[2];
+        int a = bandOffsets[3];
+        for (int y = 0, i = 0; y < bounds.height; y++) {
+            int p = (bounds.y + y) * stride + bounds.x * PIXEL_BYTES;
+            for (int x = 0; x < bounds.width; x++, i++, p += PIXEL_BYTES) {
+                byte l = luminance[i];
+                pixels[p + r] = l;
+                pixels[p + g] = l;
+                pixels[p + b] = l;
+                pixels[p + a] = alpha[i];
+            }
+        }
+        return newImage(colorModel, sampleModel, pixels);
+    }
+
+    /**
+     * Converts the component to interleaved pixels.
+     *
+     * @return an interleaved component with the pixels of this one, or this
+     * component if it is not planar.
+     */
+    public ComponentRaster toInterleaved() {
+        if (alpha == null) {
+            return this;
+        }
+
+        byte[] pixels = new byte[alpha.length * PIXEL_BYTES];
+        int r = bandOffsets[0];
+        int g = bandOffsets[1];
+        int b = bandOffsets[2];
+        int a = bandOffsets[3];
+        for (int i = 0, p = 0; i < alpha.length; i++, p += PIXEL_BYTES) {
+            byte l = luminance[i];
+            pixels[p + r] = l;
+            pixels[p + g] = l;
+            pixels[p + b] = l;
+            pixels[p + a] = alpha[i];
+        }
+        return withTrimmedImage(trimmedImage(colorModel, sampleModel, bounds, pixels));
+    }
+
+    /**
+     * Multiplies a planar component by a color. Only the pixels within the
+     * bounds are computed; transparent black stays transparent black.
+     *
+     * @param color Color to multiply by.
+     *
+     * @return An interleaved component with the bounds of this one, holding
+     * its pixels multiplied by the color like
+     * {@link AbstractMilStdSymbolRenderer#multiply(BufferedImage, Color)}
+     * does.
+     * @throws IllegalStateException if the component is not planar.
+     */
+    public ComponentRaster tint(Color color) {
+        if (alpha == null) {
+            throw new IllegalStateException("component is not planar");
+        }
+
+        int c = color.getRGB();
+        byte[] ta = multiplyTable((c >> 24) & 0xff);
+        byte[] tr = multiplyTable((c >> 16) & 0xff);
+        byte[] tg = multiplyTable((c >> 8) & 0xff);
+        byte[] tb = multiplyTable(c & 0xff);
+
+        byte[] pixels = new byte[alpha.length * PIXEL_BYTES];
+        int r = bandOffsets[0];
+        int g = bandOffsets[1];
+        int b = bandOffsets[2];
+        int a = bandOffsets[3];
+        for (int i = 0, p = 0; i < alpha.length; i++, p += PIXEL_BYTES) {
+            int l = luminance[i] & 0xff;
+            pixels[p + r] = tr[l];
+            pixels[p + g] = tg[l];
+            pixels[p + b] = tb[l];
+            pixels[p + a] = ta[alpha[i] & 0xff];
+        }
+        return withTrimmedImage(trimmedImage(colorModel, sampleModel, bounds, pixels));
+    }
+
+    /**
+     * Computes the product of a color sample with every sample value, using
+     * the arithmetic of
+     * {@link AbstractMilStdSymbolRenderer#multiply(BufferedImage, Color)}.
+     */
+    private static byte[] multiplyTable(int sample) {
+        float cs = sample / 255f;
+        byte[] table = new byte[LEVELS];
+        for (int v = 0; v < LEVELS; v++) {
+            float sv = v / 255f;
+            table[v] = (byte) (int) (cs * sv * 255 + 0.5);
+        }
+        return table;
+    }
+
+    private static BufferedImage trimmedImage(ColorModel cm, SampleModel sm, Rectangle bounds, byte[] pixels) {
+        if (bounds.isEmpty()) {
+            return null;
+        }
+        return newImage(cm, sm.createCompatibleSampleModel(bounds.width, bounds.height), pixels);
+    }
+
+    private static BufferedImage newImage(ColorModel cm, SampleModel sm, byte[] pixels) {
+        WritableRaster raster = Raster.createWritableRaster(sm, new DataBufferByte(pixels, pixels.length), null);
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentRaster{" + "width=" + getWidth() + ", height=" + getHeight() + ", bounds=" + bounds
+                + ", planar=" + isPlanar() + ", size=" + getSize() + '}';
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A decoded image held as a run-length encoded copy of its raster.
+ * <p>
+ * Symbol components are mostly transparent and drawn in a handful of flat
+ * colors, so their pixels compress well with a simple run-length code, and
+ * the code inflates with little more than array copies. That makes a
+ * compressed raster several times smaller than the decoded image and much
+ * faster to restore than decoding the original PNG.
+ * <p>
+ * The encoding works on whole four-byte pixels. Each operation starts with a
+ * control byte: values below 128 introduce a literal of {@code c + 1} pixels
+ * that follow verbatim, values of 128 and above repeat the following pixel
+ * {@code c - 126} times. Only images backed by a single byte bank with four
+ * interleaved samples per pixel, which is how ImageIO decodes the symbol PNGs,
+ * are supported. The color and sample models are kept as they are, so an
+ * inflated image has the same type and the same pixels as the original.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class CompressedRaster {
+
+    private static final int PIXEL_BYTES = 4;
+    private static final int MAX_LITERAL = 128;
+    private static final int MIN_RUN = 2;
+    private static final int MAX_RUN = 129;
+
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+    private final int rawSize;
+    private final byte[] data;
+
+    private CompressedRaster(ColorModel colorModel, SampleModel sampleModel, int rawSize, byte[] data) {
+        this.colorModel = colorModel;
+        this.sampleModel = sampleModel;
+        this.rawSize = rawSize;
+        this.data = data;
+    }
+
+    /**
+     * Compress an image.
+     *
+     * @param image Image to compress. It is not modified.
+     *
+     * @return The compressed raster, or null if the layout of the image is
+     * not supported.
+     */
+    public static CompressedRaster compress(BufferedImage image) {
+        if (!isSupported(image)) {
+            return null;
+        }
+
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int pixels = image.getWidth() * image.getHeight();
+        byte[] out = new byte[worstCase(pixels)];
+        int n = 0;
+        int literalStart = 0;
+        int i = 0;
+        while (i < pixels) {
+            int pixel = pixelAt(src, i);
+            int run = 1;
+            while (i + run < pixels && run < MAX_RUN && pixelAt(src, i + run) == pixel) {
+                run++;
+            }
+            if (run < MIN_RUN) {
+                i++;
+                continue;
+            }
+
+            n = writeLiterals(src, literalStart, i, out, n);
+            out[n++] = (byte) (run + 126);
+            System.arraycopy(src, i * PIXEL_BYTES, out, n, PIXEL_BYTES);
+            n += PIXEL_BYTES;
+            i += run;
+            literalStart = i;
+        }
+        n = writeLiterals(src, literalStart, pixels, out, n);
+
+        return new CompressedRaster(image.getColorModel(), sampleModel, pixels * PIXEL_BYTES,
+                Arrays.copyOf(out, n));
+    }
+
+    /**
+     * Indicates whether the pixels of an image are laid out as a single array
+     * of four interleaved bytes per pixel, without padding.
+     */
+    static boolean isSupported(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        return raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0
+                && sampleModel instanceof PixelInterleavedSampleModel
+                && ((PixelInterleavedSampleModel) sampleModel).getPixelStride() == PIXEL_BYTES
+                && ((PixelInterleavedSampleModel) sampleModel).getScanlineStride() == PIXEL_BYTES * image.getWidth()
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+    }
+
+    private static int worstCase(int pixels) {
+        return pixels * PIXEL_BYTES + (pixels + MAX_LITERAL - 1) / MAX_LITERAL;
+    }
+
+    private static int pixelAt(byte[] src, int pixel) {
+        int i = pixel * PIXEL_BYTES;
+        return (src[i] & 0xff) << 24 | (src[i + 1] & 0xff) << 16 | (src[i + 2] & 0xff) << 8 | (src[i + 3] & 0xff);
+    }
+
+    private static int writeLiterals(byte[] src, int from, int to, byte[] out, int n) {
+        while (from < to) {
+            int count = Math.min(MAX_LITERAL, to - from);
+            out[n++] = (byte) (count - 1);
+            System.arraycopy(src, from * PIXEL_BYTES, out, n, count * PIXEL_BYTES);
+            n += count * PIXEL_BYTES;
+            from += count;
+        }
+        return n;
+    }
+
+    /**
+     * Restore the pixels into a buffer.
+     *
+     * @param dest Buffer of at least {@link #getRawSize()} bytes. It may be
+     * reused between calls.
+     */
+    public void inflate(byte[] dest) {
+        if (dest.length < rawSize) {
+            throw new IllegalArgumentException("dest is too small");
+        }
+        inflate(ByteBuffer.wrap(data), dest);
+    }
+
+    /**
+     * Restore run-length encoded pixels read from a buffer, for example one
+     * mapped from an {@link AssetPack}.
+     *
+     * @param src the encoded pixels, from its position to its limit. The
+     * position is advanced to the limit.
+     * @param dest Buffer large enough for the restored pixels.
+     */
+    static void inflate(ByteBuffer src, byte[] dest) {
+        int out = 0;
+        while (src.hasRemaining()) {
+            int control = src.get() & 0xff;
+            if (control < MAX_LITERAL) {
+                int length = (control + 1) * PIXEL_BYTES;
+                src.get(dest, out, length);
+                out += length;
+            } else {
+                int length = (control - 126) * PIXEL_BYTES;
+                src.get(dest, out, PIXEL_BYTES);
+                // Double the filled part of the run until it is complete.
+                for (int filled = PIXEL_BYTES; filled < length; filled <<= 1) {
+                    System.arraycopy(dest, out, dest, out + filled, Math.min(filled, length - filled));
+                }
+                out += length;
+            }
+        }
+    }
+
+    /**
+     * Restore the image.
+     *
+     * @return A new image with the type and pixels of the compressed image.
+     */
+    public BufferedImage inflate() {
+        byte[] pixels = new byte[rawSize];
+        this.inflate(pixels);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, new DataBufferByte(pixels, rawSize), null);
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Returns the encoded pixels. The array is shared and must not be
+     * modified.
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return sampleModel.getWidth();
+    }
+
+    public int getHeight() {
+        return sampleModel.getHeight();
+    }
+
+    /**
+     * Indicates the size of the pixel data once inflated.
+     *
+     * @return the size in bytes.
+     */
+    public int getRawSize() {
+        return rawSize;
+    }
+
+    /**
+     * Indicates the size of the compressed pixel data.
+     *
+     * @return the size in bytes.
+     */
+    public int getCompressedSize() {
+        return data.length;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedRaster{" + "width=" + getWidth() + ", height=" + getHeight() + ", rawSize=" + rawSize
+                + ", compressedSize=" + data.length + '}';
+    }
+}
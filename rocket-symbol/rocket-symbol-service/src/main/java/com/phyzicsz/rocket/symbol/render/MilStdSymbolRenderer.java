@@ -15,7 +15,12 @@
  */
 package com.phyzicsz.rocket.symbol.render;
 
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.cache.HotKeyRecorder;
+import com.phyzicsz.rocket.symbol.cache.SingleFlight;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
 import com.phyzicsz.rocket.symbol.common.SymbologyConstants;
+import com.phyzicsz.rocket.symbol.common.InvalidSymbolCodeException;
 import com.phyzicsz.rocket.symbol.common.SymbolCode;
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -24,10 +29,16 @@ import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 //import com.phyzicsz.rocket.symbol.kvstore.KVKey;
@@ -67,6 +78,35 @@ import com.phyzicsz.rocket.symbol.utils.MimeEncodingUtils;
  * fill the frame. If the symbol is not drawn with a frame, then the fill will
  * be applied to the icon itself. The fill color has no effect if Show Fill is
  * False.</td></tr> </table>
+ * <h2>Symbol caching</h2>
+ * <p>
+ * The output of createIcon depends only on the symbol code and the parameters
+ * above. {@link #getRenderKey(String, SymbolServiceProperties) getRenderKey}
+ * reduces them to a {@link RenderKey}: the resolved fill, frame and icon paths
+ * and their colors. Symbol codes that differ only in fields the renderer
+ * ignores share a render key. When
+ * {@link RenderConfiguration#withSymbolCacheBytes(long)} is set, the composited
+ * images are cached by render key and a repeated request is answered with a
+ * copy of the cached image, so callers may modify the result without affecting
+ * the cache. {@link #createSymbolImage(RenderKey) createSymbolImage} returns
+ * a read-only {@link SymbolImage} instead and does not copy cached images.
+ * Unless disabled with
+ * {@link RenderConfiguration#withFrequencyAdmission(boolean)}, a newly rendered
+ * symbol only displaces a cached one if it has been requested more often, so a
+ * burst of rarely used symbol codes does not flush the popular ones.
+ * <p>
+ * Below the symbol cache, the fill and frame of a symbol are composited once
+ * per tint and kept as a base layer, so rendering a new symbol copies its base
+ * layer and draws the icon over it. See
+ * {@link RenderConfiguration#withPrecomputeBaseLayers(boolean)}.
+ * <p>
+ * Failures are cached too. A symbol code that cannot be parsed is rejected on
+ * later requests with an {@link InvalidSymbolCodeException} carrying the
+ * original message, or with an {@link IllegalArgumentException} if it does not
+ * even have the length of a symbol code. A symbol whose component is missing
+ * from the symbol repository fails with a {@link MissingComponentException}
+ * without the repository being searched again. Neither of the checked
+ * exceptions records a stack trace.
  *
  * @author phyzicsz <phyzics.z@gmail.com>
  * $
@@ -81,6 +121,11 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
     protected static final String TACTICAL_SYMBOLS_PATH = "tacsym";
     protected static final String UNKNOWN_PATH = "unk";
 
+    /**
+     * Number of digest bytes in an entity tag.
+     */
+    private static final int ETAG_BYTES = 16;
+
     protected static final Color FILL_COLOR_LIGHT_RED = new Color(255, 128, 128);
     protected static final Color FILL_COLOR_LIGHT_BLUE = new Color(128, 224, 255);
     protected static final Color FILL_COLOR_LIGHT_GREEN = new Color(170, 255, 170);
@@ -112,6 +157,11 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
      * Line width used to stroke circle when fill is turned off.
      */
     protected static final int CIRCLE_LINE_WIDTH = 2;
+    /**
+     * Status codes with distinct frames: Anticipated frames are dashed.
+     */
+    private static final String[] BASE_LAYER_STATUSES = {
+        SymbologyConstants.STATUS_ANTICIPATED, SymbologyConstants.STATUS_PRESENT};
 
     // Static maps and sets providing fast access to attributes about a symbol ID. These data structures are populated
     // in a static block at the bottom of this class.
@@ -123,9 +173,123 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
     protected static final Set<String> unframedIconMap = new HashSet<>();
     protected static final Set<String> emsEquipment = new HashSet<>();
 
-   
+
+    /**
+     * Render keys of recently requested symbol codes and parameters, so that
+     * repeated requests skip parsing the symbol code.
+     */
+    private final SymbolCache<SymbolKey, RenderKey> renderKeyCache;
+
+    /**
+     * Storage keys of recently requested render keys, so the asset hashes of
+     * a symbol are combined once rather than on every request. Entries built
+     * from changed assets are dropped by {@link #refreshAssets()}.
+     */
+    private final SymbolCache<RenderKey, String> storageKeyCache;
+
+    /**
+     * Entity tags of recently requested render keys, so answering a
+     * conditional request digests nothing. Invalidated like the storage keys.
+     */
+    private final SymbolCache<RenderKey, String> eTagCache;
+
+    /**
+     * Composited symbols keyed by render key. Disabled unless a size is
+     * configured.
+     */
+    private final SymbolCache<RenderKey, BufferedImage> symbolCache;
+
+    /**
+     * Fill and frame composites keyed by their layers, so a symbol is rendered
+     * by drawing its icon over a copy. See {@link #renderIcon(RenderKey)}.
+     */
+    private final SymbolCache<RenderKey, BufferedImage> baseLayerCache;
+
+    /**
+     * Symbol codes that failed to resolve, keyed like the render key cache.
+     */
+    private final SymbolCache<SymbolKey, Rejection> invalidSymbolCache;
+
+    /**
+     * Renders in progress, so concurrent requests for the same symbol wait for
+     * one render instead of each running their own.
+     */
+    private final SingleFlight<RenderKey, BufferedImage> renderFlights = new SingleFlight<>();
+
+    /**
+     * Request counts per symbol code and parameters, or null if disabled.
+     */
+    private final HotKeyRecorder<SymbolKey> topSymbols;
+
     public MilStdSymbolRenderer() {
+        this(new RenderConfiguration());
+    }
 
+    public MilStdSymbolRenderer(RenderConfiguration config) {
+        super(config);
+        this.renderKeyCache = new SymbolCache<>("renderKeys", Long.MAX_VALUE, config.getRenderKeyCacheEntries(),
+                (key, renderKey) -> 1);
+        this.storageKeyCache = new SymbolCache<>("storageKeys", Long.MAX_VALUE, config.getRenderKeyCacheEntries(),
+                (key, storageKey) -> 1);
+        this.eTagCache = new SymbolCache<>("eTags", Long.MAX_VALUE, config.getRenderKeyCacheEntries(),
+                (key, eTag) -> 1);
+        this.symbolCache = new SymbolCache<>("symbols", config.getSymbolCacheBytes(), Long.MAX_VALUE,
+                (key, image) -> imageWeight(image), config.isFrequencyAdmission());
+        this.baseLayerCache = new SymbolCache<>("baseLayers", config.getBaseLayerCacheBytes(),
+                (key, image) -> imageWeight(image));
+        this.invalidSymbolCache = new SymbolCache<>("invalidSymbols", Long.MAX_VALUE,
+                config.getNegativeCacheEntries(), (key, rejection) -> 1);
+        memoryGovernor.register(SYMBOL_TIER_VALUE, symbolCache);
+        memoryGovernor.register(BASE_LAYER_TIER_VALUE, baseLayerCache);
+        this.topSymbols = config.getTopSymbolCapacity() > 0
+                ? new HotKeyRecorder<>(config.getTopSymbolCapacity())
+                : null;
+
+        if (config.isPrecomputeBaseLayers()) {
+            int count = this.precomputeBaseLayers();
+            logger.info("precomputed {} base layers", count);
+        }
+    }
+
+    /**
+     * Composite the base layer of every standard identity, battle dimension
+     * and status in the default colors, so no request has to build one. Base
+     * layers of symbols drawn with a custom fill color are still built on
+     * first use.
+     *
+     * @return The number of distinct base layers in the cache.
+     */
+    public int precomputeBaseLayers() {
+        SymbolServiceProperties params = new SymbolServiceProperties();
+        params.put(SymbolServiceProperties.SHOW_ICON, Boolean.FALSE);
+
+        Set<RenderKey> bases = new HashSet<>();
+        for (String si : SymbologyConstants.STANDARD_IDENTITY_ALL) {
+            for (String bd : SymbologyConstants.BATTLE_DIMENSION_ALL) {
+                if (SymbologyConstants.BATTLE_DIMENSION_OTHER.equals(bd)) {
+                    continue; // The Other dimension is only used by tactical graphics and has no frame.
+                }
+                // Ground units, equipment and installations each have their own frame shape.
+                String[] functionIds = SymbologyConstants.BATTLE_DIMENSION_GROUND.equals(bd)
+                        ? new String[]{"------", "U-----", "E-----", "I-----"}
+                        : new String[]{"------"};
+                for (String status : BASE_LAYER_STATUSES) {
+                    for (String fid : functionIds) {
+                        String sidc = "S" + si + bd + status + fid + "-----";
+                        RenderKey base;
+                        try {
+                            base = baseLayers(this.resolveRenderKey(new SymbolCode(sidc), params));
+                        } catch (IOException ex) {
+                            continue;
+                        }
+                        if (base != null && bases.add(base)) {
+                            baseLayerCache.get(base, this::renderBaseLayer);
+                        }
+                    }
+                }
+            }
+        }
+        return bases.size();
     }
 
     /**
@@ -144,16 +308,297 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
      */
     @Override
     public BufferedImage createIcon(String sidc, SymbolServiceProperties params) throws IOException {
+        return this.createIcon(this.getRenderKey(sidc, params));
+    }
+
+    /**
+     * Create the icon described by a render key.
+     *
+     * @param key Render key of the symbol.
+     *
+     * @return An BufferedImage containing the icon. The caller owns the image
+     * and may modify it.
+     */
+    public BufferedImage createIcon(RenderKey key) {
+        // Never hand out the cached or shared instance; the caller owns the returned image.
+        return copyImage(this.sharedIcon(key));
+    }
+
+    @Override
+    public SymbolImage createSymbolImage(String sidc, SymbolServiceProperties params) throws IOException {
+        return this.createSymbolImage(this.getRenderKey(sidc, params));
+    }
+
+    /**
+     * Create a read-only image of the symbol described by a render key. A
+     * symbol found in the symbol cache is returned without copying it.
+     *
+     * @param key Render key of the symbol.
+     *
+     * @return The symbol.
+     */
+    public SymbolImage createSymbolImage(RenderKey key) {
+        return new SymbolImage(this.sharedIcon(key));
+    }
+
+    /**
+     * Returns the cached image of a symbol, rendering it if necessary. The
+     * image may be shared with the cache and with concurrent callers and must
+     * not be modified.
+     */
+    private BufferedImage sharedIcon(RenderKey key) {
+        BufferedImage image = symbolCache.getIfPresent(key);
+        if (image != null) {
+            return image;
+        }
+
+        try {
+            return renderFlights.execute(key, () -> {
+                long start = System.nanoTime();
+                BufferedImage rendered = this.renderIcon(key);
+                symbolCache.recordLoad(System.nanoTime() - start);
+                symbolCache.put(key, rendered);
+                memoryGovernor.enforce();
+                return rendered;
+            });
+        } catch (IOException ex) {
+            // Rendering itself does no I/O; only waiting for a concurrent render can fail.
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reduce a symbol code and its parameters to the canonical description of
+     * the image they render to. Symbol codes that differ only in fields the
+     * renderer ignores produce equal keys.
+     *
+     * @param sidc SIDC identifier for the symbol.
+     * @param params Parameters that affect icon retrieval.
+     *
+     * @return The render key of the symbol.
+     * @throws java.io.IOException if the symbol code is not recognized. A
+     * symbol code that was already rejected before is reported with an
+     * {@link InvalidSymbolCodeException}.
+     * @throws IllegalArgumentException if the symbol code is null or does not
+     * have the length of a symbol code.
+     */
+    public RenderKey getRenderKey(String sidc, SymbolServiceProperties params) throws IOException {
+        SymbolKey symbolKey = symbolKey(sidc, params);
+        RenderKey key = this.getRenderKey(symbolKey, params);
+        this.recordRequest(symbolKey);
+        return key;
+    }
+
+    /**
+     * Resolves the render key of a symbol code like
+     * {@link #getRenderKey(String, SymbolServiceProperties)}, but without
+     * counting a request for it. Used to restore caches, so the symbols they
+     * restore do not appear among the {@link #getTopSymbols(int) top symbols}.
+     *
+     * @param sidc SIDC identifier for the symbol.
+     * @param params Parameters that affect icon retrieval.
+     *
+     * @return The render key of the symbol.
+     * @throws java.io.IOException if the symbol code is not recognized.
+     */
+    public RenderKey lookupRenderKey(String sidc, SymbolServiceProperties params) throws IOException {
+        return this.getRenderKey(symbolKey(sidc, params), params);
+    }
+
+    private static SymbolKey symbolKey(String sidc, SymbolServiceProperties params) {
         if (sidc == null) {
             logger.error("symbol code is null");
             throw new IllegalArgumentException("symbol code is null");
         }
+        return SymbolKey.of(sidc, params);
+    }
 
-        //replace all tactical customizations with standard markings...
-        sidc = sidc.replace('*','-');
-        
-        SymbolCode symbolCode = new SymbolCode(sidc);
-        BufferedImage image = null;
+    private RenderKey getRenderKey(SymbolKey symbolKey, SymbolServiceProperties params) throws IOException {
+        RenderKey key = renderKeyCache.getIfPresent(symbolKey);
+        if (key != null) {
+            return key;
+        }
+
+        Rejection rejection = invalidSymbolCache.getIfPresent(symbolKey);
+        if (rejection != null) {
+            if (rejection.malformed) {
+                throw new IllegalArgumentException(rejection.message);
+            }
+            throw new InvalidSymbolCodeException(rejection.message);
+        }
+
+        try {
+            key = this.resolveRenderKey(new SymbolCode(symbolKey.getSidc()), params);
+        } catch (IOException ex) {
+            invalidSymbolCache.put(symbolKey, new Rejection(String.valueOf(ex.getMessage()), false));
+            throw ex;
+        } catch (IllegalArgumentException ex) {
+            invalidSymbolCache.put(symbolKey, new Rejection(String.valueOf(ex.getMessage()), true));
+            throw ex;
+        }
+        renderKeyCache.put(symbolKey, key);
+        return key;
+    }
+
+    /**
+     * Performs an action for every symbol code and parameters whose render
+     * key is currently remembered, that is the recently requested symbols.
+     *
+     * @param action receives the key of the request and its render key.
+     */
+    public void forEachRenderKey(BiConsumer<? super SymbolKey, ? super RenderKey> action) {
+        renderKeyCache.forEach(action);
+    }
+
+    private void recordRequest(SymbolKey symbolKey) {
+        // Once the recorder is full, halve the counts whenever as many requests went uncounted as it can track,
+        // so new favorites can still get in.
+        if (topSymbols != null && !topSymbols.record(symbolKey)
+                && topSymbols.getUntrackedCount() > topSymbols.getCapacity()) {
+            topSymbols.decay();
+        }
+    }
+
+    /**
+     * Returns the most requested symbol codes and parameters, weighted towards
+     * recent requests.
+     *
+     * @param n the maximum number of entries to return.
+     * @return the symbols and their request counts, most requested first.
+     * Empty if the counting is disabled.
+     */
+    public List<Map.Entry<SymbolKey, Long>> getTopSymbols(int n) {
+        return topSymbols != null ? topSymbols.top(n) : Collections.emptyList();
+    }
+
+    /**
+     * Returns the key under which an encoded image of a symbol is stored
+     * outside of the renderer. It extends the canonical form of the render
+     * key with the content hashes of the assets the symbol is drawn from, so
+     * a stored image is never found again once one of its assets changes.
+     * The key is computed once per render key and remembered until one of
+     * its assets is refreshed.
+     *
+     * @param key Render key of the symbol.
+     *
+     * @return The storage key.
+     * @throws java.io.IOException if the symbol repository cannot be
+     * scanned.
+     */
+    public String getStorageKey(RenderKey key) throws IOException {
+        String storageKey = storageKeyCache.getIfPresent(key);
+        if (storageKey != null) {
+            return storageKey;
+        }
+
+        AssetCatalog catalog = this.getAssetCatalog();
+        long hash = 0;
+        for (RenderKey.Layer layer : key.getLayers()) {
+            hash = 31 * Long.rotateLeft(hash, 17) + catalog.getHash(layer.getPath());
+        }
+        storageKey = key.toString() + "@" + Long.toHexString(hash);
+        storageKeyCache.put(key, storageKey);
+        if (this.getAssetCatalog() != catalog) {
+            // The assets were refreshed meanwhile and the key may already be stale.
+            storageKeyCache.invalidate(key);
+        }
+        return storageKey;
+    }
+
+    /**
+     * Returns a strong entity tag for the PNG encoding of a symbol without
+     * rendering it. The tag digests the storage key, that is the components,
+     * their colors and their content hashes, so it changes exactly when the
+     * encoded image would. Like the storage key, the tag is remembered per
+     * render key.
+     *
+     * @param key Render key of the symbol.
+     *
+     * @return The quoted entity tag.
+     * @throws java.io.IOException if the symbol repository cannot be
+     * scanned.
+     */
+    public String getETag(RenderKey key) throws IOException {
+        String eTag = eTagCache.getIfPresent(key);
+        if (eTag != null) {
+            return eTag;
+        }
+
+        AssetCatalog catalog = this.getAssetCatalog();
+        byte[] sha = AssetCatalog.sha256().digest(this.getStorageKey(key).getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(2 * ETAG_BYTES + 2).append('"');
+        for (int i = 0; i < ETAG_BYTES; i++) {
+            sb.append(Character.forDigit((sha[i] >> 4) & 0xf, 16)).append(Character.forDigit(sha[i] & 0xf, 16));
+        }
+        eTag = sb.append('"').toString();
+        eTagCache.put(key, eTag);
+        if (this.getAssetCatalog() != catalog) {
+            eTagCache.invalidate(key);
+        }
+        return eTag;
+    }
+
+    @Override
+    protected void invalidateAssets(Set<String> paths) {
+        super.invalidateAssets(paths);
+        storageKeyCache.invalidateIf(key -> key.dependsOnAny(paths));
+        eTagCache.invalidateIf(key -> key.dependsOnAny(paths));
+        baseLayerCache.invalidateIf(key -> key.dependsOnAny(paths));
+        symbolCache.invalidateIf(key -> key.dependsOnAny(paths));
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the symbol cache.
+     *
+     * @return a snapshot of the symbol cache statistics.
+     */
+    public CacheStats getSymbolCacheStats() {
+        return symbolCache.stats();
+    }
+
+    @Override
+    public List<CacheStats> getCacheStats() {
+        List<CacheStats> stats = new ArrayList<>();
+        stats.add(renderKeyCache.stats());
+        stats.add(storageKeyCache.stats());
+        stats.add(eTagCache.stats());
+        stats.add(invalidSymbolCache.stats());
+        stats.add(symbolCache.stats());
+        stats.add(baseLayerCache.stats());
+        stats.addAll(super.getCacheStats());
+        return stats;
+    }
+
+    /**
+     * Indicates the number of renders saved because a request joined an
+     * identical render already in progress.
+     *
+     * @return the number of coalesced renders.
+     */
+    public long getCoalescedRenderCount() {
+        return renderFlights.getCoalescedCount();
+    }
+
+    /**
+     * Returns the statistics of the cache of rejected symbol codes.
+     *
+     * @return a snapshot of the invalid symbol cache statistics.
+     */
+    public CacheStats getInvalidSymbolCacheStats() {
+        return invalidSymbolCache.stats();
+    }
+
+    /**
+     * Resolve the components of a symbol and the colors they are drawn in.
+     *
+     * @param symbolCode Parsed symbol code.
+     * @param params Parameters that affect icon retrieval.
+     *
+     * @return The render key of the symbol.
+     * @throws java.io.IOException if the symbol code is not recognized.
+     */
+    protected RenderKey resolveRenderKey(SymbolCode symbolCode, SymbolServiceProperties params) throws IOException {
+        List<RenderKey.Layer> layers = new ArrayList<>(3);
 
         boolean mustDrawFill = this.mustDrawFill(symbolCode, params);
         boolean mustDrawIcon = this.mustDrawIcon(symbolCode, params);
@@ -161,26 +606,113 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
 
         if (mustDrawFrame || mustDrawIcon) {
             if (mustDrawFill && mustDrawFrame) {
-                image = this.drawFill(symbolCode, params, null);
+                addLayer(layers, this.composeFillPath(symbolCode), this.getFillColor(symbolCode, params));
             }
 
             if (mustDrawFrame) {
-                image = this.drawFrame(symbolCode, params, image);
+                addLayer(layers, this.composeFramePath(symbolCode), this.getFrameColor(symbolCode, params));
             }
 
             if (mustDrawIcon) {
-                image = this.drawIcon(symbolCode, params, image);
+                addLayer(layers, this.composeIconPath(symbolCode, params), this.getIconColor(symbolCode, params));
             }
         }
 
         // Draw a dot if both frame and icon are turned off
+        Color circleColor = null;
+        if (layers.isEmpty()) {
+            circleColor = mustDrawFill ? this.getFillColor(symbolCode, params) : DEFAULT_ICON_COLOR;
+        }
+
+        return new RenderKey(layers, circleColor);
+    }
+
+    private static void addLayer(List<RenderKey.Layer> layers, String path, Color color) {
+        if (path != null) {
+            layers.add(new RenderKey.Layer(path, color));
+        }
+    }
+
+    /**
+     * Render a symbol without consulting the symbol cache.
+     *
+     * @param key Render key of the symbol.
+     *
+     * @return An BufferedImage containing the icon for the requested symbol.
+     * @throws MissingComponentException if a component of the symbol is not
+     * in the symbol repository.
+     */
+    protected BufferedImage renderIcon(RenderKey key) {
+        // Fail before compositing anything if a component is already known to be missing.
+        for (RenderKey.Layer layer : key.getLayers()) {
+            if (this.isMissingComponent(layer.getPath())) {
+                throw new MissingComponentException(layer.getPath());
+            }
+        }
+
+        // Start from a copy of the cached fill and frame composite, so only the icon is drawn.
+        List<RenderKey.Layer> layers = key.getLayers();
+        BufferedImage image = null;
+        int drawn = 0;
+        RenderKey base = baseLayers(key);
+        if (base != null) {
+            BufferedImage baseImage = baseLayerCache.get(base, this::renderBaseLayer);
+            image = copyImage(baseImage);
+            drawn = base.getLayers().size();
+        }
+
+        for (RenderKey.Layer layer : layers.subList(drawn, layers.size())) {
+            image = this.drawIconComponent(layer.getPath(), layer.getColor(), image);
+        }
+
         if (image == null) {
-            image = this.drawCircle(symbolCode, params, image);
+            image = this.drawCircle(key.getCircleColor(), image);
         }
 
         return image;
     }
 
+    /**
+     * Composite the layers of a base layer key. The result is shared through
+     * the base layer cache and must not be modified.
+     */
+    private BufferedImage renderBaseLayer(RenderKey base) {
+        BufferedImage image = null;
+        for (RenderKey.Layer layer : base.getLayers()) {
+            image = this.drawIconComponent(layer.getPath(), layer.getColor(), image);
+        }
+        return image;
+    }
+
+    /**
+     * Reduce a render key to its leading fill and frame layers.
+     *
+     * @return The key of the base layer, or null if the symbol does not start
+     * with both a fill and a frame. A single component is already cached by
+     * the tinted component cache.
+     */
+    private static RenderKey baseLayers(RenderKey key) {
+        List<RenderKey.Layer> layers = key.getLayers();
+        int count = 0;
+        while (count < layers.size() && isBaseLayer(layers.get(count).getPath())) {
+            count++;
+        }
+        return count >= 2 ? new RenderKey(layers.subList(0, count), null) : null;
+    }
+
+    private static boolean isBaseLayer(String path) {
+        return path.startsWith(FILLS_PATH + "/") || path.startsWith(FRAMES_PATH + "/");
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the base layer cache.
+     *
+     * @return a snapshot of the base layer cache statistics.
+     */
+    public CacheStats getBaseLayerCacheStats() {
+        return baseLayerCache.stats();
+    }
+
     protected boolean mustDrawFill(SymbolCode symbolCode, SymbolServiceProperties params) {
         String maskedCode = symbolCode.toMaskedString().toLowerCase();
         if (unfilledIconMap.contains(maskedCode)) {
@@ -229,10 +761,15 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
     }
 
     protected BufferedImage drawCircle(SymbolCode symbolCode, SymbolServiceProperties params, BufferedImage dest) {
-        Color frameColor = DEFAULT_FRAME_COLOR;
         Color fillColor = this.mustDrawFill(symbolCode, params) ? this.getFillColor(symbolCode, params)
                 : DEFAULT_ICON_COLOR;
 
+        return this.drawCircle(fillColor, dest);
+    }
+
+    protected BufferedImage drawCircle(Color fillColor, BufferedImage dest) {
+        Color frameColor = DEFAULT_FRAME_COLOR;
+
         if (dest == null) {
             int diameter = CIRCLE_RADIUS * 2;
             dest = new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
@@ -268,21 +805,20 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
     }
 
     protected BufferedImage drawIconComponent(String path, Color color, BufferedImage dest) {
-        BufferedImage image = this.readImage(path);
-        if (image == null) {
-            logger.error("missing icon component");
-            throw new IllegalArgumentException("missing icon component");
-        }
-
-        if (color != null) {
-            this.multiply(image, color);
+        // The tinted component is shared with the cache, so it is only ever read from. When it is the first layer
+        // of the symbol it becomes the destination of the following layers and is restored to a private full-size
+        // copy; the following layers are drawn within their bounds only.
+        ComponentRaster component = this.readTintedComponent(path, color);
+        if (component == null) {
+            // Already logged when the component was first found missing.
+            throw new MissingComponentException(path);
         }
 
         if (dest != null) {
-            image = this.drawImage(image, dest);
+            return this.drawComponent(component, dest);
         }
 
-        return image;
+        return component.toImage();
     }
 
     protected String composeFillPath(SymbolCode symbolCode) {
@@ -918,4 +1454,22 @@ public class MilStdSymbolRenderer extends AbstractMilStdSymbolRenderer {
         emsEquipment.add("e-f-ma---------");
         emsEquipment.add("e-f-mc---------");
     }
+
+    /**
+     * Why a symbol code failed to resolve.
+     */
+    private static final class Rejection {
+
+        final String message;
+        /**
+         * True if the symbol code was rejected with an
+         * {@link IllegalArgumentException} rather than an {@link IOException}.
+         */
+        final boolean malformed;
+
+        Rejection(String message, boolean malformed) {
+            this.message = message;
+            this.malformed = malformed;
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+/**
+ * Signals that a symbol requires a component that is not in the symbol
+ * repository.
+ * <p>
+ * Missing components are remembered by the renderer, so symbols that need them
+ * are rejected without probing the repository again. The exception has no
+ * stack trace; the path of the missing component is its message.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class MissingComponentException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+
+    public MissingComponentException(String path) {
+        super("missing icon component: " + path);
+        this.path = path;
+    }
+
+    /**
+     * Indicates the component that is missing.
+     *
+     * @return the path of the component relative to the symbol repository.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+}
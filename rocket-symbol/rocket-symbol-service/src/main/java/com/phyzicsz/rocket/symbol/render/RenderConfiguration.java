@@ -15,10 +15,597 @@
  */
 package com.phyzicsz.rocket.symbol.render;
 
+import java.nio.file.Path;
+
 /**
+ * Tuning parameters for the symbol renderers and the caches they maintain.
  *
  * @author phyzicsz <phyzics.z@gmail.com>
  */
 public class RenderConfiguration {
-    
+
+    /**
+     * Default size of the decoded component cache. A decoded 128x128 component
+     * occupies 64KB, so this holds roughly five hundred components.
+     */
+    public static final long DEFAULT_COMPONENT_CACHE_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Default size of the compressed component cache. The complete symbol
+     * repository compresses to about 40MB.
+     */
+    public static final long DEFAULT_COMPRESSED_COMPONENT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Default size of the tinted component cache.
+     */
+    public static final long DEFAULT_TINTED_COMPONENT_CACHE_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Default size of the base layer cache. The standard fill and frame
+     * composites in their default colors take about 18MB.
+     */
+    public static final long DEFAULT_BASE_LAYER_CACHE_BYTES = 24L * 1024 * 1024;
+
+    /**
+     * Default size of the encoded PNG cache of the symbol service.
+     */
+    public static final long DEFAULT_PNG_CACHE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Default maximum number of encoded PNGs cached by the symbol service.
+     */
+    public static final int DEFAULT_PNG_CACHE_ENTRIES = 16 * 1024;
+
+    /**
+     * Default maximum number of render keys remembered by the renderer.
+     */
+    public static final int DEFAULT_RENDER_KEY_CACHE_ENTRIES = 16 * 1024;
+
+    /**
+     * Default maximum number of invalid symbol codes and missing components
+     * remembered by the renderer.
+     */
+    public static final int DEFAULT_NEGATIVE_CACHE_ENTRIES = 4 * 1024;
+
+    /**
+     * Default number of symbol codes written to the hot set file.
+     */
+    public static final int DEFAULT_HOT_SET_SIZE = 1024;
+
+    /**
+     * Default interval between two writes of the hot set file.
+     */
+    public static final long DEFAULT_HOT_SET_INTERVAL_SECONDS = 300;
+
+    /**
+     * Default number of symbol and option combinations whose requests are
+     * counted for the statistics.
+     */
+    public static final int DEFAULT_TOP_SYMBOL_CAPACITY = 1024;
+
+    /**
+     * Default size of the segment file of the persistent PNG cache.
+     */
+    public static final long DEFAULT_PERSISTENT_PNG_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Class path resource of the asset pack built by the rocket-symbol-assets
+     * module.
+     */
+    public static final String DEFAULT_ASSET_PACK_RESOURCE = "/symbols.pack";
+
+    private long componentCacheBytes = DEFAULT_COMPONENT_CACHE_BYTES;
+    private long compressedComponentCacheBytes = DEFAULT_COMPRESSED_COMPONENT_CACHE_BYTES;
+    private long tintedComponentCacheBytes = DEFAULT_TINTED_COMPONENT_CACHE_BYTES;
+    private long symbolCacheBytes = 0;
+    private long baseLayerCacheBytes = DEFAULT_BASE_LAYER_CACHE_BYTES;
+    private boolean precomputeBaseLayers = false;
+    private long memoryBudgetBytes = 0;
+    private double heapUsageThreshold = 0;
+    private int renderKeyCacheEntries = DEFAULT_RENDER_KEY_CACHE_ENTRIES;
+    private long pngCacheBytes = DEFAULT_PNG_CACHE_BYTES;
+    private int pngCacheEntries = DEFAULT_PNG_CACHE_ENTRIES;
+    private long offHeapPngCacheBytes = 0;
+    private boolean frequencyAdmission = true;
+    private int negativeCacheEntries = DEFAULT_NEGATIVE_CACHE_ENTRIES;
+    private Path warmupPath = null;
+    private Path snapshotPath = null;
+    private Path assetPackPath = null;
+    private String assetPackResource = DEFAULT_ASSET_PACK_RESOURCE;
+    private Path hotSetPath = null;
+    private int hotSetSize = DEFAULT_HOT_SET_SIZE;
+    private long hotSetIntervalSeconds = DEFAULT_HOT_SET_INTERVAL_SECONDS;
+    private Path persistentPngCachePath = null;
+    private long persistentPngCacheBytes = DEFAULT_PERSISTENT_PNG_CACHE_BYTES;
+    private int topSymbolCapacity = DEFAULT_TOP_SYMBOL_CAPACITY;
+    private String jmxName = null;
+
+    public RenderConfiguration() {
+
+    }
+
+    /**
+     * Sets the maximum number of bytes of decoded symbol components (fills,
+     * frames and icons) kept in memory. Zero disables the cache.
+     *
+     * @param value maximum size in bytes.
+     * @return this configuration.
+     */
+    public RenderConfiguration withComponentCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("componentCacheBytes is negative");
+        }
+        this.componentCacheBytes = value;
+        return this;
+    }
+
+    public long getComponentCacheBytes() {
+        return componentCacheBytes;
+    }
+
+    /**
+     * Sets an asset pack the renderer maps into memory and reads components
+     * from instead of decoding the PNGs of the symbol repository. Components
+     * missing from the pack, or changed since it was built, are still read
+     * from the repository. Null, the default, always reads the repository.
+     *
+     * @param value asset pack file, or null.
+     * @return this configuration.
+     */
+    public RenderConfiguration withAssetPackPath(final Path value) {
+        this.assetPackPath = value;
+        return this;
+    }
+
+    public Path getAssetPackPath() {
+        return assetPackPath;
+    }
+
+    /**
+     * Sets the class path resource of an asset pack, used when no
+     * {@link #withAssetPackPath(Path) asset pack path} is set. The default is
+     * the pack of the rocket-symbol-assets module; if the resource is not on
+     * the class path, components are read from the symbol repository. Null
+     * disables the lookup.
+     *
+     * @param value absolute resource path of the asset pack, or null.
+     * @return this configuration.
+     */
+    public RenderConfiguration withAssetPackResource(final String value) {
+        this.assetPackResource = value;
+        return this;
+    }
+
+    public String getAssetPackResource() {
+        return assetPackResource;
+    }
+
+    /**
+     * Sets the maximum number of bytes of run-length compressed components
+     * kept in memory. Components that fall out of the decoded component cache
+     * are restored from this cache, which is much faster than decoding the
+     * PNG again. Zero disables the cache.
+     *
+     * @param value maximum size in bytes.
+     * @return this configuration.
+     */
+    public RenderConfiguration withCompressedComponentCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("compressedComponentCacheBytes is negative");
+        }
+        this.compressedComponentCacheBytes = value;
+        return this;
+    }
+
+    public long getCompressedComponentCacheBytes() {
+        return compressedComponentCacheBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of tinted symbol components kept in
+     * memory. Each entry is a component already multiplied by one of the fill,
+     * frame or icon colors. Zero disables the cache.
+     *
+     * @param value maximum size in bytes.
+     * @return this configuration.
+     */
+    public RenderConfiguration withTintedComponentCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("tintedComponentCacheBytes is negative");
+        }
+        this.tintedComponentCacheBytes = value;
+        return this;
+    }
+
+    public long getTintedComponentCacheBytes() {
+        return tintedComponentCacheBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of fully composited symbols kept in
+     * memory by the renderer. The symbol cache is disabled by default.
+     *
+     * @param value maximum size in bytes, or zero to disable the cache.
+     * @return this configuration.
+     */
+    public RenderConfiguration withSymbolCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("symbolCacheBytes is negative");
+        }
+        this.symbolCacheBytes = value;
+        return this;
+    }
+
+    public long getSymbolCacheBytes() {
+        return symbolCacheBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of base layers kept in memory. A base
+     * layer is the fill and frame of a symbol composited in their tint colors,
+     * so rendering a symbol only has to draw its icon over a copy. Zero
+     * disables the cache.
+     *
+     * @param value maximum size in bytes.
+     * @return this configuration.
+     */
+    public RenderConfiguration withBaseLayerCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("baseLayerCacheBytes is negative");
+        }
+        this.baseLayerCacheBytes = value;
+        return this;
+    }
+
+    public long getBaseLayerCacheBytes() {
+        return baseLayerCacheBytes;
+    }
+
+    /**
+     * Sets whether the renderer composites the base layer of every standard
+     * identity, battle dimension and status when it is created, instead of on
+     * first use. Base layers for custom fill colors are always built on first
+     * use.
+     *
+     * @param value true to build the standard base layers up front.
+     * @return this configuration.
+     */
+    public RenderConfiguration withPrecomputeBaseLayers(final boolean value) {
+        this.precomputeBaseLayers = value;
+        return this;
+    }
+
+    public boolean isPrecomputeBaseLayers() {
+        return precomputeBaseLayers;
+    }
+
+    /**
+     * Sets the number of bytes all in-memory symbol caches of a renderer and
+     * its symbol service may hold together. When the caches grow past the
+     * budget, the caches whose entries are cheapest to rebuild are shrunk
+     * first. Each cache is still bounded by its own size as well.
+     *
+     * @param value the budget in bytes, or zero for no common limit.
+     * @return this configuration.
+     */
+    public RenderConfiguration withMemoryBudgetBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("memoryBudgetBytes is negative");
+        }
+        this.memoryBudgetBytes = value;
+        return this;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * Sets the fraction of the tenured heap above which the symbol caches
+     * release half of their memory. The check runs after every garbage
+     * collection through the collection usage threshold of the heap pools,
+     * which is global to the JVM. Disabled by default.
+     *
+     * @param value a fraction between zero and one, or zero to disable.
+     * @return this configuration.
+     */
+    public RenderConfiguration withHeapUsageThreshold(final double value) {
+        if (value < 0 || value >= 1) {
+            throw new IllegalArgumentException("heapUsageThreshold must be at least 0 and less than 1");
+        }
+        this.heapUsageThreshold = value;
+        return this;
+    }
+
+    public double getHeapUsageThreshold() {
+        return heapUsageThreshold;
+    }
+
+    /**
+     * Sets the maximum number of render keys remembered by the renderer. A
+     * remembered render key saves parsing the symbol code on a repeated
+     * request. Zero disables the cache.
+     *
+     * @param value maximum number of entries.
+     * @return this configuration.
+     */
+    public RenderConfiguration withRenderKeyCacheEntries(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("renderKeyCacheEntries is negative");
+        }
+        this.renderKeyCacheEntries = value;
+        return this;
+    }
+
+    public int getRenderKeyCacheEntries() {
+        return renderKeyCacheEntries;
+    }
+
+    /**
+     * Sets the maximum number of invalid symbol codes, and separately of
+     * missing symbol components, remembered by the renderer. A remembered
+     * failure is reported again without parsing the symbol code or searching
+     * the symbol repository. Zero disables the caches.
+     *
+     * @param value maximum number of entries.
+     * @return this configuration.
+     */
+    public RenderConfiguration withNegativeCacheEntries(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negativeCacheEntries is negative");
+        }
+        this.negativeCacheEntries = value;
+        return this;
+    }
+
+    public int getNegativeCacheEntries() {
+        return negativeCacheEntries;
+    }
+
+    /**
+     * Sets the maximum number of bytes of encoded PNG images kept in memory by
+     * the symbol service. Zero disables the cache.
+     *
+     * @param value maximum size in bytes.
+     * @return this configuration.
+     */
+    public RenderConfiguration withPngCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("pngCacheBytes is negative");
+        }
+        this.pngCacheBytes = value;
+        return this;
+    }
+
+    public long getPngCacheBytes() {
+        return pngCacheBytes;
+    }
+
+    /**
+     * Sets the maximum number of encoded PNG images kept in memory by the
+     * symbol service. Zero disables the cache.
+     *
+     * @param value maximum number of entries.
+     * @return this configuration.
+     */
+    public RenderConfiguration withPngCacheEntries(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("pngCacheEntries is negative");
+        }
+        this.pngCacheEntries = value;
+        return this;
+    }
+
+    public int getPngCacheEntries() {
+        return pngCacheEntries;
+    }
+
+    /**
+     * Sets whether the symbol cache and the PNG cache use frequency-based
+     * admission. When enabled, a new entry only replaces an existing one if it
+     * has been requested more often recently, which protects the popular
+     * symbols against bursts of one-off symbol codes. Enabled by default; when
+     * disabled the caches evict purely by recency.
+     *
+     * @param value true to enable frequency-based admission.
+     * @return this configuration.
+     */
+    public RenderConfiguration withFrequencyAdmission(final boolean value) {
+        this.frequencyAdmission = value;
+        return this;
+    }
+
+    public boolean isFrequencyAdmission() {
+        return frequencyAdmission;
+    }
+
+    /**
+     * Sets the number of bytes of direct memory used to hold encoded PNG images
+     * outside of the Java heap. The off-heap tier is disabled by default. When
+     * enabled it holds the images in place of the on-heap PNG caches, which
+     * then only keep images too large for a slab, and it must hold at least
+     * two slabs of one megabyte each.
+     *
+     * @param value size in bytes, or zero to disable the off-heap tier.
+     * @return this configuration.
+     */
+    public RenderConfiguration withOffHeapPngCacheBytes(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("offHeapPngCacheBytes is negative");
+        }
+        this.offHeapPngCacheBytes = value;
+        return this;
+    }
+
+    public long getOffHeapPngCacheBytes() {
+        return offHeapPngCacheBytes;
+    }
+
+    /**
+     * Sets the file that holds encoded PNG images across restarts. The file is
+     * memory-mapped and appended to as symbols are rendered. The file is
+     * emptied when the service starts with a different symbol asset set. The
+     * persistent cache is disabled by default.
+     *
+     * @param value path of the segment file, or null to disable the cache.
+     * @return this configuration.
+     */
+    public RenderConfiguration withPersistentPngCachePath(final Path value) {
+        this.persistentPngCachePath = value;
+        return this;
+    }
+
+    public Path getPersistentPngCachePath() {
+        return persistentPngCachePath;
+    }
+
+    /**
+     * Sets the size of the segment file of the persistent PNG cache. Once the
+     * file is full no further images are added to it.
+     *
+     * @param value size in bytes, at most 2GB.
+     * @return this configuration.
+     */
+    public RenderConfiguration withPersistentPngCacheBytes(final long value) {
+        if (value <= 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("persistentPngCacheBytes must be positive and at most 2GB");
+        }
+        this.persistentPngCacheBytes = value;
+        return this;
+    }
+
+    public long getPersistentPngCacheBytes() {
+        return persistentPngCacheBytes;
+    }
+
+    /**
+     * Sets a file of symbol codes rendered into the caches when the symbol
+     * service is created, before the constructor returns. The symbols are
+     * rendered in parallel on all available processors with the options
+     * listed for them in the file. See {@code WarmupFile} for the format.
+     *
+     * @param value path of the warm-up file, or null to start cold. A file
+     * that does not exist is ignored.
+     * @return this configuration.
+     */
+    public RenderConfiguration withWarmupPath(final Path value) {
+        this.warmupPath = value;
+        return this;
+    }
+
+    public Path getWarmupPath() {
+        return warmupPath;
+    }
+
+    /**
+     * Sets a snapshot of the encoded PNG cache to import when the symbol
+     * service starts, before the warm-up. A missing file is ignored.
+     *
+     * @param value snapshot written by
+     * {@code RocketSymbolService.exportSnapshot}, or null.
+     * @return this configuration.
+     */
+    public RenderConfiguration withSnapshotPath(final Path value) {
+        this.snapshotPath = value;
+        return this;
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Sets a file the symbol service periodically writes its most requested
+     * symbols and their options to. Using the same file as the warm-up file makes every
+     * restart warm up with the hot set of the previous run. Recording is
+     * disabled by default.
+     *
+     * @param value path of the hot set file, or null to disable recording.
+     * @return this configuration.
+     */
+    public RenderConfiguration withHotSetPath(final Path value) {
+        this.hotSetPath = value;
+        return this;
+    }
+
+    public Path getHotSetPath() {
+        return hotSetPath;
+    }
+
+    /**
+     * Sets the number of symbol codes written to the hot set file.
+     *
+     * @param value maximum number of symbol codes.
+     * @return this configuration.
+     */
+    public RenderConfiguration withHotSetSize(final int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("hotSetSize must be positive");
+        }
+        this.hotSetSize = value;
+        return this;
+    }
+
+    public int getHotSetSize() {
+        return hotSetSize;
+    }
+
+    /**
+     * Sets the interval between two writes of the hot set file. Request counts
+     * are halved after every write, so the recorded hot set follows changes in
+     * traffic.
+     *
+     * @param value interval in seconds.
+     * @return this configuration.
+     */
+    public RenderConfiguration withHotSetIntervalSeconds(final long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("hotSetIntervalSeconds must be positive");
+        }
+        this.hotSetIntervalSeconds = value;
+        return this;
+    }
+
+    public long getHotSetIntervalSeconds() {
+        return hotSetIntervalSeconds;
+    }
+
+    /**
+     * Sets the number of distinct symbol and option combinations the renderer
+     * counts requests for, to report the most requested ones. Zero disables
+     * the counting.
+     *
+     * @param value maximum number of tracked combinations.
+     * @return this configuration.
+     */
+    public RenderConfiguration withTopSymbolCapacity(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("topSymbolCapacity is negative");
+        }
+        this.topSymbolCapacity = value;
+        return this;
+    }
+
+    public int getTopSymbolCapacity() {
+        return topSymbolCapacity;
+    }
+
+    /**
+     * Sets the name under which the symbol service registers its statistics
+     * MXBean with the platform MBean server. The name must be unique within
+     * the JVM. Null, the default, does not register the MXBean.
+     *
+     * @param value name of the service in JMX, or null.
+     * @return this configuration.
+     */
+    public RenderConfiguration withJmxName(final String value) {
+        this.jmxName = value;
+        return this;
+    }
+
+    public String getJmxName() {
+        return jmxName;
+    }
+
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Canonical description of the pixels of a rendered symbol: the resolved fill,
+ * frame and icon component paths in drawing order, each with the color it is
+ * multiplied by, or the color of the circle drawn when no component applies.
+ * <p>
+ * Many symbol codes render to identical images. The Country Code, Order of
+ * Battle and most Symbol Modifier positions are ignored, standard identities
+ * are folded into Unknown, Friend, Neutral and Hostile, and status collapses to
+ * Present or Anticipated. Two requests with equal render keys therefore produce
+ * identical images, which makes the render key a good cache key.
+ * <p>
+ * Render keys are created by
+ * {@link MilStdSymbolRenderer#getRenderKey(String, com.phyzicsz.rocket.symbol.common.SymbolServiceProperties)}.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class RenderKey {
+
+    private final List<Layer> layers;
+    private final Color circleColor;
+    private final String canonical;
+    private final int hash;
+
+    RenderKey(List<Layer> layers, Color circleColor) {
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+        this.circleColor = this.layers.isEmpty() ? circleColor : null;
+
+        StringBuilder sb = new StringBuilder();
+        for (Layer layer : this.layers) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(layer.getPath());
+            appendColor(sb, layer.getColor());
+        }
+        if (this.layers.isEmpty()) {
+            sb.append("circle");
+            appendColor(sb, this.circleColor);
+        }
+        this.canonical = sb.toString();
+        this.hash = canonical.hashCode();
+    }
+
+    private static void appendColor(StringBuilder sb, Color color) {
+        if (color != null) {
+            sb.append('#').append(String.format("%08x", color.getRGB()));
+        }
+    }
+
+    /**
+     * Indicates the components of the symbol in drawing order.
+     *
+     * @return the layers of the symbol. Empty if the symbol is drawn as a
+     * circle.
+     */
+    public List<Layer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * Indicates the fill color of the circle drawn when the symbol has neither
+     * a frame nor an icon.
+     *
+     * @return the circle color, or null if the symbol has layers.
+     */
+    public Color getCircleColor() {
+        return circleColor;
+    }
+
+    /**
+     * Indicates whether the symbol is drawn as a circle.
+     *
+     * @return true if the symbol has no layers.
+     */
+    public boolean isCircle() {
+        return layers.isEmpty();
+    }
+
+    /**
+     * Indicates whether the symbol is drawn from any of a set of assets.
+     *
+     * @param paths asset paths relative to the symbol repository.
+     * @return true if a layer of this key uses one of the assets.
+     */
+    public boolean dependsOnAny(Set<String> paths) {
+        for (Layer layer : layers) {
+            if (paths.contains(layer.getPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RenderKey)) {
+            return false;
+        }
+        final RenderKey other = (RenderKey) obj;
+        return this.hash == other.hash && this.canonical.equals(other.canonical);
+    }
+
+    /**
+     * Returns the canonical string form of this key, for example
+     * {@code fills/tacsym/-f-p-----------.png#ff80e0ff|frames/tacsym/-f-p-----------.png#ff000000}.
+     *
+     * @return the canonical form.
+     */
+    @Override
+    public String toString() {
+        return canonical;
+    }
+
+    /**
+     * A single component of a symbol: a path relative to the symbol repository
+     * and the color the component is multiplied by.
+     */
+    public static final class Layer {
+
+        private final String path;
+        private final Color color;
+
+        Layer(String path, Color color) {
+            this.path = Objects.requireNonNull(path, "path is null");
+            this.color = color;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Indicates the color the component is multiplied by.
+         *
+         * @return the tint color, or null if the component is drawn unchanged.
+         */
+        public Color getColor() {
+            return color;
+        }
+
+        @Override
+        public String toString() {
+            return color != null ? path + "#" + String.format("%08x", color.getRGB()) : path;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import javax.imageio.ImageIO;
+
+/**
+ * A read-only handle to a rendered symbol.
+ * <p>
+ * A {@link BufferedImage} can always be modified by whoever holds it, so a
+ * cache that hands one out has to copy it first. A symbol image instead wraps
+ * an image that nobody modifies any more and only exposes its pixels for
+ * reading, which lets the renderer return the cached image itself. Encoding
+ * reads the shared pixels directly; {@link #toBufferedImage()} makes the copy
+ * only when a caller actually needs a mutable image.
+ * <p>
+ * Symbol images are safe to share between threads.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class SymbolImage {
+
+    /**
+     * Initial size of the PNG encoding buffer, large enough for a typical
+     * symbol so the buffer does not have to grow while encoding.
+     */
+    private static final int PNG_BUFFER_SIZE = 8 * 1024;
+
+    private final BufferedImage image;
+
+    /**
+     * Wraps an image without copying it. The caller hands over the image and
+     * must not modify it afterwards.
+     */
+    SymbolImage(BufferedImage image) {
+        this.image = Objects.requireNonNull(image, "image is null");
+    }
+
+    /**
+     * Creates a symbol image from a copy of an image.
+     *
+     * @param image Image to copy. It may be modified afterwards without
+     * affecting the symbol image.
+     *
+     * @return A symbol image with the pixels of {@code image}.
+     */
+    public static SymbolImage copyOf(BufferedImage image) {
+        return new SymbolImage(AbstractMilStdSymbolRenderer.copyImage(image));
+    }
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Returns a pixel in the default ARGB color model.
+     *
+     * @param x column of the pixel.
+     * @param y row of the pixel.
+     *
+     * @return The ARGB value of the pixel.
+     */
+    public int getRGB(int x, int y) {
+        return image.getRGB(x, y);
+    }
+
+    /**
+     * Copies a rectangle of pixels in the default ARGB color model into an
+     * array.
+     *
+     * @param startX left column of the rectangle.
+     * @param startY top row of the rectangle.
+     * @param w width of the rectangle.
+     * @param h height of the rectangle.
+     * @param rgbArray array to copy the pixels to, or null to allocate one.
+     * @param offset index of the first pixel in {@code rgbArray}.
+     * @param scansize distance between two rows in {@code rgbArray}.
+     *
+     * @return The array holding the pixels.
+     */
+    public int[] getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+        return image.getRGB(startX, startY, w, h, rgbArray, offset, scansize);
+    }
+
+    /**
+     * Writes the symbol as PNG.
+     *
+     * @param out Stream to write to. The stream is not closed.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    public void writePng(OutputStream out) throws IOException {
+        if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("no PNG writer available");
+        }
+    }
+
+    /**
+     * Encodes the symbol as PNG.
+     *
+     * @return The PNG encoding of the symbol.
+     *
+     * @throws IOException if the image cannot be encoded.
+     */
+    public byte[] encodePng() throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(PNG_BUFFER_SIZE)) {
+            this.writePng(baos);
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Converts the symbol to a mutable image.
+     *
+     * @return A new image with the type and pixels of the symbol. The caller
+     * owns the image and may modify it.
+     */
+    public BufferedImage toBufferedImage() {
+        return AbstractMilStdSymbolRenderer.copyImage(image);
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolImage{" + "width=" + image.getWidth() + ", height=" + image.getHeight() + '}';
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import com.phyzicsz.rocket.symbol.common.SymbolServiceProperties;
+import java.awt.Color;
+import java.util.Objects;
+
+/**
+ * Immutable cache key identifying a rendered symbol: the SIDC with tactical
+ * customizations replaced by standard markings, together with the effective
+ * values of the SHOW_FILL, SHOW_FRAME, SHOW_ICON and COLOR parameters.
+ * <p>
+ * Parameters that are absent take their default value, so a key built from an
+ * empty parameter list equals a key built with all three flags explicitly set
+ * to true.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public final class SymbolKey {
+
+    private static final int SHOW_FILL = 1;
+    private static final int SHOW_FRAME = 2;
+    private static final int SHOW_ICON = 4;
+    private static final int HAS_COLOR = 8;
+
+    private final String sidc;
+    private final int flags;
+    private final int argb;
+
+    private SymbolKey(String sidc, int flags, int argb) {
+        this.sidc = sidc;
+        this.flags = flags;
+        this.argb = argb;
+    }
+
+    /**
+     * Creates the key for a symbol code rendered with a set of parameters.
+     *
+     * @param sidc SIDC identifier for the symbol.
+     * @param params Parameters that affect icon retrieval. May be null.
+     *
+     * @return the key.
+     */
+    public static SymbolKey of(String sidc, SymbolServiceProperties params) {
+        if (sidc == null) {
+            throw new IllegalArgumentException("symbol code is null");
+        }
+
+        int flags = 0;
+        int argb = 0;
+        if (isEnabled(params, SymbolServiceProperties.SHOW_FILL)) {
+            flags |= SHOW_FILL;
+        }
+        if (isEnabled(params, SymbolServiceProperties.SHOW_FRAME)) {
+            flags |= SHOW_FRAME;
+        }
+        if (isEnabled(params, SymbolServiceProperties.SHOW_ICON)) {
+            flags |= SHOW_ICON;
+        }
+
+        Object color = params != null ? params.get(SymbolServiceProperties.COLOR) : null;
+        if (color instanceof Color) {
+            flags |= HAS_COLOR;
+            argb = ((Color) color).getRGB();
+        }
+
+        return new SymbolKey(sidc.replace('*', '-'), flags, argb);
+    }
+
+    private static boolean isEnabled(SymbolServiceProperties params, String key) {
+        Object o = params != null ? params.get(key) : null;
+        return o == null || o.equals(Boolean.TRUE);
+    }
+
+    public String getSidc() {
+        return sidc;
+    }
+
+    public boolean isShowFill() {
+        return (flags & SHOW_FILL) != 0;
+    }
+
+    public boolean isShowFrame() {
+        return (flags & SHOW_FRAME) != 0;
+    }
+
+    public boolean isShowIcon() {
+        return (flags & SHOW_ICON) != 0;
+    }
+
+    /**
+     * Indicates the color override of this key.
+     *
+     * @return the fill color override, or null if the standard colors are
+     * used.
+     */
+    public Color getColor() {
+        return (flags & HAS_COLOR) != 0 ? new Color(argb, true) : null;
+    }
+
+    /**
+     * Creates parameters that produce this key again when passed to
+     * {@link #of(String, SymbolServiceProperties)} with the SIDC of the key.
+     *
+     * @return new parameters with all three flags and the color override, if
+     * any, set.
+     */
+    public SymbolServiceProperties toParams() {
+        SymbolServiceProperties params = new SymbolServiceProperties();
+        params.put(SymbolServiceProperties.SHOW_FILL, isShowFill());
+        params.put(SymbolServiceProperties.SHOW_FRAME, isShowFrame());
+        params.put(SymbolServiceProperties.SHOW_ICON, isShowIcon());
+        Color color = getColor();
+        if (color != null) {
+            params.put(SymbolServiceProperties.COLOR, color);
+        }
+        return params;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 53 * hash + sidc.hashCode();
+        hash = 53 * hash + flags;
+        hash = 53 * hash + argb;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SymbolKey)) {
+            return false;
+        }
+        final SymbolKey other = (SymbolKey) obj;
+        return this.flags == other.flags
+                && this.argb == other.argb
+                && Objects.equals(this.sidc, other.sidc);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(sidc);
+        sb.append(isShowFill() ? ";fill" : ";nofill");
+        sb.append(isShowFrame() ? ";frame" : ";noframe");
+        sb.append(isShowIcon() ? ";icon" : ";noicon");
+        if ((flags & HAS_COLOR) != 0) {
+            sb.append(";color=").append(String.format("%08x", argb));
+        }
+        return sb.toString();
+    }
+
+}
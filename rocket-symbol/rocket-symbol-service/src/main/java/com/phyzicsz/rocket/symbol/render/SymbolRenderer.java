@@ -40,4 +40,20 @@ public interface SymbolRenderer {
      * @throws java.io.IOException
      */
     BufferedImage createIcon(String symbolId, SymbolServiceProperties props) throws IOException;
+
+    /**
+     * Create a read-only image of a symbol in a symbol set. Renderers that
+     * cache symbols can return cached images this way without copying them.
+     *
+     * @param symbolId Identifier for the symbol. The format of this identifier
+     * depends on the symbology set.
+     * @param props
+     *
+     * @return The requested symbol, or null if it cannot be retrieved.
+     * @throws java.io.IOException
+     */
+    default SymbolImage createSymbolImage(String symbolId, SymbolServiceProperties props) throws IOException {
+        BufferedImage image = this.createIcon(symbolId, props);
+        return image != null ? new SymbolImage(image) : null;
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.rocket.symbol.render;
+
+import java.util.Objects;
+
+/**
+ * Key of a tinted component: the component path together with the ARGB value
+ * of the color it was multiplied by, or without a color for a component drawn
+ * as it is.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+final class TintKey {
+
+    private final String path;
+    private final int argb;
+    private final boolean tinted;
+
+    TintKey(String path, int argb) {
+        this(path, argb, true);
+    }
+
+    private TintKey(String path, int argb, boolean tinted) {
+        this.path = Objects.requireNonNull(path, "path is null");
+        this.argb = argb;
+        this.tinted = tinted;
+    }
+
+    /**
+     * Creates the key of a component that is not multiplied by a color.
+     */
+    static TintKey untinted(String path) {
+        return new TintKey(path, 0, false);
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    int getArgb() {
+        return argb;
+    }
+
+    boolean isTinted() {
+        return tinted;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * path.hashCode() + (tinted ? argb : 1);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TintKey)) {
+            return false;
+        }
+        final TintKey other = (TintKey) obj;
+        return this.argb == other.argb && this.tinted == other.tinted && this.path.equals(other.path);
+    }
+
+    @Override
+    public String toString() {
+        return tinted ? path + "#" + Integer.toHexString(argb) : path;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.RocketSymbolService;
+import com.phyzicsz.rocket.symbol.render.AssetCatalog;
+import com.phyzicsz.rocket.symbol.render.AssetPack;
+import com.phyzicsz.rocket.symbol.render.MilStdSymbolRenderer;
+import com.phyzicsz.rocket.symbol.render.RenderConfiguration;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class AssetPackTest {
+
+    private static final String SYMBOL_CODE = "SFPP------*****";
+    private static final String FILL = "fills/tacsym/-fp------------.png";
+    private static final String FRAME = "frames/tacsym/-fpp-----------.png";
+
+    private Path dir;
+    private Path pack;
+    private AssetCatalog catalog;
+
+    public AssetPackTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rocket-symbol");
+        pack = dir.resolve("symbols.pack");
+        catalog = AssetCatalog.scan(MilStdSymbolRenderer.class, "/symbols");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRecordsAssetHashes() throws IOException {
+        try (AssetPack.Writer writer = new AssetPack.Writer(pack, catalog.getVersion(), true)) {
+            writer.add(FRAME, catalog.getHash(FRAME), decode(FRAME));
+            writer.commit();
+        }
+
+        AssetPack assets = AssetPack.open(pack);
+        assertThat(assets.getAssetVersion()).isEqualTo(catalog.getVersion());
+        assertThat(assets.getHash(FRAME)).isEqualTo(catalog.getHash(FRAME));
+        assertThat(assets.getHash(FILL)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testFailedWriteKeepsPreviousPack() throws IOException {
+        try (AssetPack.Writer writer = new AssetPack.Writer(pack, catalog.getVersion(), true)) {
+            writer.add(FRAME, catalog.getHash(FRAME), decode(FRAME));
+            writer.commit();
+        }
+        byte[] previous = Files.readAllBytes(pack);
+
+        assertThatThrownBy(() -> {
+            try (AssetPack.Writer writer = new AssetPack.Writer(pack, ~catalog.getVersion(), true)) {
+                writer.add(FILL, catalog.getHash(FILL), decode(FILL));
+                writer.add(FRAME, catalog.getHash(FRAME), null);
+                writer.commit();
+            }
+        }).isInstanceOf(NullPointerException.class);
+
+        assertThat(Files.readAllBytes(pack)).isEqualTo(previous);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.count()).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    public void testRejectsCorruptIndex() throws IOException {
+        try (AssetPack.Writer writer = new AssetPack.Writer(pack, catalog.getVersion(), true)) {
+            writer.add(FILL, catalog.getHash(FILL), decode(FILL));
+            writer.add(FRAME, catalog.getHash(FRAME), decode(FRAME));
+            writer.commit();
+        }
+        byte[] bytes = Files.readAllBytes(pack);
+        int indexOffset = (int) ByteBuffer.wrap(bytes).getLong(24);
+        Path corrupt = dir.resolve("corrupt.pack");
+
+        for (int length = indexOffset; length < bytes.length; length++) {
+            Files.write(corrupt, Arrays.copyOf(bytes, length));
+            assertThatThrownBy(() -> AssetPack.open(corrupt)).isInstanceOf(IOException.class);
+        }
+
+        byte[] overcounted = bytes.clone();
+        ByteBuffer.wrap(overcounted).putInt(8, Integer.MAX_VALUE);
+        Files.write(corrupt, overcounted);
+        assertThatThrownBy(() -> AssetPack.open(corrupt)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testRefreshDecodesChangedAssets() throws IOException {
+        // A pack of another repository version whose fill was changed since; the frame is unchanged.
+        BufferedImage oldFill = decode(FILL);
+        Graphics2D g = oldFill.createGraphics();
+        try {
+            g.setColor(Color.RED);
+            g.fillRect(0, 0, oldFill.getWidth(), oldFill.getHeight());
+        } finally {
+            g.dispose();
+        }
+        try (AssetPack.Writer writer = new AssetPack.Writer(pack, ~catalog.getVersion(), true)) {
+            writer.add(FILL, ~catalog.getHash(FILL), oldFill);
+            writer.add(FRAME, catalog.getHash(FRAME), decode(FRAME));
+            writer.commit();
+        }
+
+        RocketSymbolService instance = new RocketSymbolService(new RenderConfiguration().withAssetPackPath(pack));
+        RocketSymbolService repository = new RocketSymbolService();
+
+        // The pack is trusted until the repository is scanned: the tag describes the pixels of the pack.
+        String packETag = instance.getETag(SYMBOL_CODE);
+        assertThat(instance.asPng(SYMBOL_CODE)).isNotEqualTo(expected(SYMBOL_CODE));
+        assertThat(packETag).isNotEqualTo(repository.getETag(SYMBOL_CODE));
+
+        Set<String> changed = instance.refreshAssets();
+        assertThat(changed).contains(FILL);
+        assertThat(changed).doesNotContain(FRAME);
+
+        // The changed fill is decoded from the repository, consistent with the new tag.
+        assertThat(instance.asPng(SYMBOL_CODE)).isEqualTo(expected(SYMBOL_CODE));
+        assertThat(instance.getETag(SYMBOL_CODE)).isEqualTo(repository.getETag(SYMBOL_CODE));
+    }
+
+    @Test
+    public void testLoadFromJar() throws IOException {
+        try (AssetPack.Writer writer = new AssetPack.Writer(pack, catalog.getVersion(), true)) {
+            writer.add(FRAME, catalog.getHash(FRAME), decode(FRAME));
+            writer.commit();
+        }
+        Path jar = dir.resolve("assets.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("symbols.pack"));
+            Files.copy(pack, out);
+            out.closeEntry();
+        }
+
+        URL url = new URL("jar:" + jar.toUri() + "!/symbols.pack");
+        AssetPack assets = AssetPack.load(url);
+        assertThat(AssetPack.load(url)).isSameAs(assets);
+        assertThat(assets.getByteSize()).isEqualTo(Files.size(pack));
+        assertThat(assets.getHash(FRAME)).isEqualTo(catalog.getHash(FRAME));
+        BufferedImage frame = assets.read(FRAME);
+        BufferedImage expected = decode(FRAME);
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(frame.getRGB(0, 0, width, height, null, 0, width))
+                .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    @Test
+    public void testMemoryBreakdownIncludesPack() throws IOException {
+        try (AssetPack.Writer writer = new AssetPack.Writer(pack, catalog.getVersion(), true)) {
+            writer.add(FRAME, catalog.getHash(FRAME), decode(FRAME));
+            writer.commit();
+        }
+
+        RocketSymbolService instance = new RocketSymbolService(new RenderConfiguration().withAssetPackPath(pack));
+        assertThat(instance.getMemoryBreakdown().get("assetPack")).isEqualTo(Files.size(pack));
+        assertThat(new RocketSymbolService().getMemoryBreakdown().containsKey("assetPack")).isFalse();
+    }
+
+    private static BufferedImage decode(String asset) throws IOException {
+        try (InputStream in = MilStdSymbolRenderer.class.getResourceAsStream("/symbols/" + asset)) {
+            BufferedImage image = ImageIO.read(in);
+            BufferedImage abgr = new BufferedImage(image.getWidth(), image.getHeight(),
+                    BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D g = abgr.createGraphics();
+            try {
+                g.drawImage(image, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+            return abgr;
+        }
+    }
+
+    private static byte[] expected(String symbolCode) throws IOException {
+        Path testFile = Paths.get("src", "test", "resources", "2525", "friend", symbolCode + ".png");
+        return Files.readAllBytes(testFile);
+    }
+}
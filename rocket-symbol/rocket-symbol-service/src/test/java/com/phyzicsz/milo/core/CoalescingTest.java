@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.RocketSymbolService;
+import com.phyzicsz.rocket.symbol.render.MilStdSymbolRenderer;
+import com.phyzicsz.rocket.symbol.render.RenderKey;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class CoalescingTest {
+
+    private static final String FRIEND_UNIT = "SFGPUCI----D---";
+    private static final int THREADS = 8;
+
+    public CoalescingTest() {
+    }
+
+    @Test
+    public void testConcurrentRendersAreCoalesced() throws Exception {
+        // The first render waits until every other request has joined it, so none of them can render on its own.
+        AtomicInteger renders = new AtomicInteger();
+        MilStdSymbolRenderer renderer = new MilStdSymbolRenderer() {
+            @Override
+            protected BufferedImage renderIcon(RenderKey key) {
+                renders.incrementAndGet();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (getCoalescedRenderCount() < THREADS - 1 && System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+                return super.renderIcon(key);
+            }
+        };
+        RenderKey key = renderer.getRenderKey(FRIEND_UNIT, null);
+
+        List<BufferedImage> images = runConcurrently(() -> renderer.createIcon(key));
+        assertThat(renders.get()).isEqualTo(1);
+        assertThat(renderer.getCoalescedRenderCount()).isEqualTo((long) THREADS - 1);
+        int[] expected = pixels(images.get(0));
+        for (BufferedImage image : images) {
+            assertThat(pixels(image)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testConcurrentPngRequestsAreCoalesced() throws Exception {
+        RocketSymbolService instance = new RocketSymbolService();
+
+        List<byte[]> pngs = runConcurrently(() -> instance.asPng(FRIEND_UNIT));
+        for (byte[] png : pngs) {
+            assertThat(png).isEqualTo(pngs.get(0));
+        }
+        // Requests either joined a render or found the finished image in the cache.
+        long coalesced = instance.getCoalescedRenderCount();
+        assertThat(instance.getPngCacheStats().getHitCount() + coalesced).isLessThanOrEqualTo((long) THREADS - 1);
+    }
+
+    private static <T> List<T> runConcurrently(Callable<T> request) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return request.call();
+                }));
+            }
+            start.countDown();
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
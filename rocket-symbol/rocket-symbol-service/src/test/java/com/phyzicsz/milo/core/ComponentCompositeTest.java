@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.render.ComponentRaster;
+import com.phyzicsz.rocket.symbol.render.MilStdSymbolRenderer;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class ComponentCompositeTest {
+
+    private static final String FILL = "fills/tacsym/-fp------------.png";
+    private static final String FRAME = "frames/tacsym/-fpp-----------.png";
+    private static final String ICON = "icons/war/sfpps----------.png";
+
+    private TestRenderer renderer;
+    private BufferedImage base;
+
+    public ComponentCompositeTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        renderer = new TestRenderer();
+        base = renderer.drawn(decode(FRAME), decode(FILL));
+    }
+
+    @Test
+    public void testOffsetIcon() throws IOException {
+        // Gray components are drawn once tinted, that is interleaved.
+        ComponentRaster icon = ComponentRaster.of(decode(ICON)).toInterleaved();
+        Rectangle bounds = icon.getBounds();
+        assertThat(bounds.x).isGreaterThan(0);
+        assertThat(bounds.y).isGreaterThan(0);
+        assertSameComposite(icon, decode(ICON));
+
+        ComponentRaster tinted = renderer.tinted(ICON, Color.BLACK);
+        assertThat(tinted.getBounds()).isEqualTo(bounds);
+        assertSameComposite(tinted, tinted.toImage());
+    }
+
+    @Test
+    public void testTranslucentCorner() {
+        // Content touching the bottom right edge of the canvas, with partial alpha.
+        BufferedImage image = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        int w = image.getWidth();
+        int h = image.getHeight();
+        for (int y = h - 5; y < h; y++) {
+            for (int x = w - 7; x < w; x++) {
+                image.setRGB(x, y, (36 * (x - w + 8)) << 24 | 0x00c08040);
+            }
+        }
+        ComponentRaster component = ComponentRaster.of(image);
+        assertThat(component.getBounds()).isEqualTo(new Rectangle(w - 7, h - 5, 7, 5));
+        assertSameComposite(component, image);
+    }
+
+    @Test
+    public void testEmptyComponent() {
+        BufferedImage image = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        ComponentRaster component = ComponentRaster.of(image).toInterleaved();
+        assertThat(component.getBounds().isEmpty()).isTrue();
+
+        BufferedImage dest = copy(base);
+        assertThat(renderer.drawn(component, dest)).isSameAs(dest);
+        assertSameComposite(component, image);
+    }
+
+    @Test
+    public void testUnsupportedLayout() throws IOException {
+        BufferedImage image = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        renderer.drawn(decode(ICON), image);
+        image.setRGB(3, 4, 0x80ff0000);
+        ComponentRaster component = ComponentRaster.of(image);
+        assertThat(component.isPlanar()).isFalse();
+        assertThat(component.getBounds()).isEqualTo(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        assertSameComposite(component, image);
+    }
+
+    /**
+     * Draws a component within its bounds and the full canvas it was created
+     * from over copies of the base layer, and compares the results.
+     */
+    private void assertSameComposite(ComponentRaster component, BufferedImage canvas) {
+        BufferedImage trimmed = renderer.drawn(component, copy(base));
+        BufferedImage full = renderer.drawn(canvas, copy(base));
+        int width = full.getWidth();
+        int height = full.getHeight();
+        assertThat(trimmed.getRGB(0, 0, width, height, null, 0, width))
+                .isEqualTo(full.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    private static BufferedImage decode(String path) throws IOException {
+        try (InputStream in = MilStdSymbolRenderer.class.getResourceAsStream("/symbols/" + path)) {
+            return ImageIO.read(in);
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    /**
+     * Gives the test access to the compositing of the renderer.
+     */
+    private static final class TestRenderer extends MilStdSymbolRenderer {
+
+        ComponentRaster tinted(String path, Color color) {
+            return this.readTintedComponent(path, color);
+        }
+
+        BufferedImage drawn(ComponentRaster src, BufferedImage dest) {
+            return this.drawComponent(src, dest);
+        }
+
+        BufferedImage drawn(BufferedImage src, BufferedImage dest) {
+            return this.drawImage(src, dest);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.render.CompressedRaster;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares three ways of holding the symbol components: fully decoded, as
+ * run-length compressed rasters, and as PNG decoded on every use. Run
+ * manually; results are logged.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class ComponentStoreBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ComponentStoreBenchmark.class);
+
+    private static final int ROUNDS = 3;
+
+    public ComponentStoreBenchmark() {
+    }
+
+    @Test
+    @Disabled
+    public void compareDecodedCompressedAndPng() throws IOException, URISyntaxException {
+        Path root = Paths.get(getClass().getResource("/symbols").toURI());
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(p -> p.toString().endsWith(".png")).sorted().collect(Collectors.toList());
+        }
+
+        List<byte[]> pngs = new ArrayList<>();
+        List<BufferedImage> decoded = new ArrayList<>();
+        List<CompressedRaster> compressed = new ArrayList<>();
+        long pngBytes = 0;
+        long decodedBytes = 0;
+        long compressedBytes = 0;
+        int maxRawSize = 0;
+        for (Path file : files) {
+            byte[] png = Files.readAllBytes(file);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            CompressedRaster raster = CompressedRaster.compress(image);
+            assertThat(raster).isNotNull();
+
+            pngs.add(png);
+            decoded.add(image);
+            compressed.add(raster);
+            pngBytes += png.length;
+            decodedBytes += raster.getRawSize();
+            compressedBytes += raster.getCompressedSize();
+            maxRawSize = Math.max(maxRawSize, raster.getRawSize());
+        }
+        logger.info("{} components: {} bytes decoded, {} bytes compressed, {} bytes of PNG", files.size(),
+                decodedBytes, compressedBytes, pngBytes);
+
+        byte[] buffer = new byte[maxRawSize];
+        int n = files.size();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (BufferedImage image : decoded) {
+                image.copyData(null);
+            }
+            long decodedNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (CompressedRaster raster : compressed) {
+                raster.inflate(buffer);
+            }
+            long reusedNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (CompressedRaster raster : compressed) {
+                raster.inflate();
+            }
+            long inflatedNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (byte[] png : pngs) {
+                ImageIO.read(new ByteArrayInputStream(png));
+            }
+            long pngNanos = System.nanoTime() - start;
+
+            logger.info("round {}: copy decoded {} ns, inflate into buffer {} ns, inflate image {} ns,"
+                    + " decode PNG {} ns per component", round, decodedNanos / n, reusedNanos / n,
+                    inflatedNanos / n, pngNanos / n);
+        }
+    }
+}
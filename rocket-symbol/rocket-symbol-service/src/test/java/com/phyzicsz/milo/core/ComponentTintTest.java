@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.render.ComponentRaster;
+import com.phyzicsz.rocket.symbol.render.MilStdSymbolRenderer;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class ComponentTintTest {
+
+    private static final List<String> GRAY = Arrays.asList(
+            "fills/tacsym/-fp------------.png",
+            "frames/tacsym/-hgpu----------.png",
+            "icons/war/sfpps----------.png");
+
+    private static final List<String> FULL_COLOR = Arrays.asList(
+            "fills/tacgrp/g-maneb--------.png",
+            "icons/metoc/was-icl---p----.png");
+
+    private static final List<Color> COLORS = Arrays.asList(
+            new Color(0x80e0ff),
+            Color.BLACK,
+            Color.WHITE,
+            new Color(255, 0, 0, 128),
+            new Color(1, 2, 254, 3));
+
+    public ComponentTintTest() {
+    }
+
+    @Test
+    public void testPlanarTintMatchesMultiply() throws IOException {
+        TestRenderer renderer = new TestRenderer();
+        for (String path : GRAY) {
+            BufferedImage image = decode(path);
+            ComponentRaster raster = ComponentRaster.of(image);
+            assertThat(raster.isPlanar()).isTrue();
+            for (Color color : COLORS) {
+                BufferedImage expected = renderer.multiplied(decode(path), color);
+                assertSamePixels(raster.tint(color).toImage(), expected);
+                assertSamePixels(renderer.tinted(path, color).toImage(), expected);
+            }
+        }
+    }
+
+    @Test
+    public void testPlanarTintCoversAllSamples() {
+        // Every luminance and alpha level, off the origin of the canvas.
+        BufferedImage image = new BufferedImage(40, 40, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int v = 0; v < 256; v++) {
+            int l = v;
+            int a = 255 - v;
+            image.setRGB(8 + v % 16, 12 + v / 16, a << 24 | l << 16 | l << 8 | l);
+        }
+        ComponentRaster raster = ComponentRaster.of(image);
+        assertThat(raster.isPlanar()).isTrue();
+
+        TestRenderer renderer = new TestRenderer();
+        for (Color color : COLORS) {
+            assertSamePixels(raster.tint(color).toImage(), renderer.multiplied(copy(image), color));
+        }
+    }
+
+    @Test
+    public void testFullColorComponentsFallBackToMultiply() throws IOException {
+        TestRenderer renderer = new TestRenderer();
+        for (String path : FULL_COLOR) {
+            ComponentRaster raster = ComponentRaster.of(decode(path));
+            assertThat(raster.isPlanar()).isFalse();
+            assertThatThrownBy(() -> raster.tint(Color.BLACK)).isInstanceOf(IllegalStateException.class);
+            for (Color color : COLORS) {
+                assertSamePixels(renderer.tinted(path, color).toImage(),
+                        renderer.multiplied(decode(path), color));
+            }
+        }
+    }
+
+    @Test
+    public void testArgbImagesAreKeptWhole() {
+        BufferedImage image = new BufferedImage(24, 24, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(5, 7, 0x80404040);
+        image.setRGB(9, 3, 0xff123456);
+        ComponentRaster raster = ComponentRaster.of(image);
+
+        assertThat(raster.isPlanar()).isFalse();
+        assertThat(raster.getBounds().width).isEqualTo(24);
+        assertThat(raster.getBounds().height).isEqualTo(24);
+        assertSamePixels(raster.toImage(), image);
+    }
+
+    private static void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getType()).isEqualTo(expected.getType());
+        assertThat(actual.getWidth()).isEqualTo(width);
+        assertThat(actual.getHeight()).isEqualTo(height);
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+                .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    private static BufferedImage decode(String path) throws IOException {
+        try (InputStream in = MilStdSymbolRenderer.class.getResourceAsStream("/symbols/" + path)) {
+            return ImageIO.read(in);
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    /**
+     * Gives the test access to the tinting of the renderer.
+     */
+    private static final class TestRenderer extends MilStdSymbolRenderer {
+
+        ComponentRaster tinted(String path, Color color) {
+            return this.readTintedComponent(path, color);
+        }
+
+        BufferedImage multiplied(BufferedImage image, Color color) {
+            this.multiply(image, color);
+            return image;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.render.CompressedRaster;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class CompressedRasterTest {
+
+    private static final int PIXEL_BYTES = 4;
+
+    public CompressedRasterTest() {
+    }
+
+    @Test
+    public void testLongestRun() {
+        CompressedRaster raster = roundTrip(image(129, i -> 0x80ff0000));
+        // One control byte and one pixel.
+        assertThat(raster.getCompressedSize()).isEqualTo(1 + PIXEL_BYTES);
+
+        // One pixel more starts a second operation.
+        assertThat(roundTrip(image(130, i -> 0x80ff0000)).getCompressedSize()).isEqualTo(2 * (1 + PIXEL_BYTES));
+    }
+
+    @Test
+    public void testLongestLiteral() {
+        CompressedRaster raster = roundTrip(image(128, i -> 0xff000000 | i));
+        assertThat(raster.getCompressedSize()).isEqualTo(1 + 128 * PIXEL_BYTES);
+
+        raster = roundTrip(image(129, i -> 0xff000000 | i));
+        assertThat(raster.getCompressedSize()).isEqualTo(2 + 129 * PIXEL_BYTES);
+    }
+
+    @Test
+    public void testRunsBetweenLiterals() {
+        roundTrip(image(1000, i -> i % 300 < 150 ? 0 : 0xff000000 | i));
+    }
+
+    @Test
+    public void testSinglePixel() {
+        CompressedRaster raster = roundTrip(image(1, i -> 0x12345678));
+        assertThat(raster.getCompressedSize()).isEqualTo(1 + PIXEL_BYTES);
+    }
+
+    @Test
+    public void testInflateIntoLargerBuffer() {
+        BufferedImage image = image(300, i -> i < 200 ? 0 : 0xff00ff00 | i);
+        CompressedRaster raster = CompressedRaster.compress(image);
+        byte[] buffer = new byte[raster.getRawSize() + 64];
+        Arrays.fill(buffer, (byte) 0x5a);
+        byte[] tail = Arrays.copyOfRange(buffer, raster.getRawSize(), buffer.length);
+
+        // The buffer is reused; bytes past the raw size are left alone.
+        for (int round = 0; round < 2; round++) {
+            raster.inflate(buffer);
+            assertThat(Arrays.copyOf(buffer, raster.getRawSize())).isEqualTo(pixels(image));
+            assertThat(Arrays.copyOfRange(buffer, raster.getRawSize(), buffer.length)).isEqualTo(tail);
+        }
+    }
+
+    private static CompressedRaster roundTrip(BufferedImage image) {
+        CompressedRaster raster = CompressedRaster.compress(image);
+        assertThat(raster).isNotNull();
+        assertThat(raster.getRawSize()).isEqualTo(image.getWidth() * image.getHeight() * PIXEL_BYTES);
+
+        BufferedImage inflated = raster.inflate();
+        assertThat(inflated.getType()).isEqualTo(image.getType());
+        assertThat(pixels(inflated)).isEqualTo(pixels(image));
+        return raster;
+    }
+
+    private static BufferedImage image(int width, IntUnaryOperator argb) {
+        BufferedImage image = new BufferedImage(width, 1, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, 0, argb.applyAsInt(x));
+        }
+        return image;
+    }
+
+    private static byte[] pixels(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
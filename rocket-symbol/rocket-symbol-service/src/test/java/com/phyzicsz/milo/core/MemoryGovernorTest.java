@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.cache.MemoryGovernor;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class MemoryGovernorTest {
+
+    public MemoryGovernorTest() {
+    }
+
+    @Test
+    public void testLeastValuableTierShrinksFirst() {
+        SymbolCache<String, byte[]> cheap = new SymbolCache<>("cheap", 1 << 20, (k, v) -> v.length);
+        SymbolCache<String, byte[]> expensive = new SymbolCache<>("expensive", 1 << 20, (k, v) -> v.length);
+        MemoryGovernor governor = new MemoryGovernor(3000, 0);
+        governor.register(20, expensive);
+        governor.register(10, cheap);
+
+        for (int i = 0; i < 20; i++) {
+            cheap.put("c" + i, new byte[100]);
+            expensive.put("e" + i, new byte[100]);
+        }
+        assertThat(governor.weight()).isEqualTo(4000L);
+
+        assertThat(governor.enforce()).isEqualTo(1000L);
+        Map<String, Long> breakdown = governor.breakdown();
+        assertThat(new ArrayList<>(breakdown.keySet())).containsExactly("cheap", "expensive");
+        assertThat(breakdown.get("cheap")).isEqualTo(1000L);
+        assertThat(breakdown.get("expensive")).isEqualTo(2000L);
+        assertThat(governor.enforce()).isEqualTo(0L);
+
+        // Once the cheap tier is empty the next tier gives up the rest.
+        assertThat(governor.release(1500)).isEqualTo(1500L);
+        assertThat(cheap.size()).isEqualTo(0L);
+        assertThat(expensive.weight()).isEqualTo(1500L);
+    }
+
+    @Test
+    public void testUnlimitedBudget() {
+        SymbolCache<String, byte[]> cache = new SymbolCache<>("cache", 1 << 20, (k, v) -> v.length);
+        MemoryGovernor governor = new MemoryGovernor(0, 0);
+        governor.register(10, cache);
+        cache.put("a", new byte[100]);
+
+        assertThat(governor.getBudget()).isEqualTo(Long.MAX_VALUE);
+        assertThat(governor.enforce()).isEqualTo(0L);
+        assertThat(cache.size()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testExistingThresholdIsKept() {
+        MemoryPoolMXBean tenured = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && pool.getUsage().getMax() > 0) {
+                tenured = pool;
+            }
+        }
+        if (tenured == null) {
+            return;
+        }
+
+        long previous = tenured.getCollectionUsageThreshold();
+        long threshold = tenured.getUsage().getMax() / 10 * 9;
+        tenured.setCollectionUsageThreshold(threshold);
+        try (MemoryGovernor governor = new MemoryGovernor(0, 0.5)) {
+            assertThat(governor.getHeapUsageThreshold()).isEqualTo(0.5);
+            assertThat(tenured.getCollectionUsageThreshold()).isEqualTo(threshold);
+        } finally {
+            tenured.setCollectionUsageThreshold(previous);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.common.InvalidSymbolCodeException;
+import com.phyzicsz.rocket.symbol.render.MilStdSymbolRenderer;
+import com.phyzicsz.rocket.symbol.render.MissingComponentException;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class NegativeCacheTest {
+
+    private static final String UNKNOWN = "SZZZQQQQQQQQQQQ";
+    private static final String FRIEND = "SFPP------*****";
+    private static final String FRIEND_FILL = "/symbols/fills/tacsym/-fp------------.png";
+
+    public NegativeCacheTest() {
+    }
+
+    @Test
+    public void testUnknownSymbolCodeIsCached() {
+        MilStdSymbolRenderer renderer = new MilStdSymbolRenderer();
+
+        Throwable first = catchThrowable(() -> renderer.getRenderKey(UNKNOWN, null));
+        assertThat(first).isInstanceOf(IOException.class);
+        assertThat(first instanceof InvalidSymbolCodeException).isFalse();
+
+        Throwable second = catchThrowable(() -> renderer.getRenderKey(UNKNOWN, null));
+        assertThat(second).isInstanceOf(InvalidSymbolCodeException.class);
+        assertThat(second.getMessage()).isEqualTo(first.getMessage());
+        assertThat(second.getStackTrace().length).isEqualTo(0);
+
+        CacheStats stats = renderer.getInvalidSymbolCacheStats();
+        assertThat(stats.getSize()).isEqualTo(1L);
+        assertThat(stats.getHitCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testMalformedSymbolCodeIsCached() {
+        MilStdSymbolRenderer renderer = new MilStdSymbolRenderer();
+
+        Throwable first = catchThrowable(() -> renderer.getRenderKey("XXXX", null));
+        assertThat(first).isInstanceOf(IllegalArgumentException.class);
+
+        // Rejected from the cache with the same exception type, not with an IOException.
+        Throwable second = catchThrowable(() -> renderer.lookupRenderKey("XXXX", null));
+        assertThat(second).isInstanceOf(IllegalArgumentException.class);
+        assertThat(second.getMessage()).isEqualTo(first.getMessage());
+
+        CacheStats stats = renderer.getInvalidSymbolCacheStats();
+        assertThat(stats.getSize()).isEqualTo(1L);
+        assertThat(stats.getHitCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testMissingComponentIsCached() {
+        AtomicInteger decodes = new AtomicInteger();
+        MilStdSymbolRenderer renderer = new MilStdSymbolRenderer() {
+            @Override
+            protected BufferedImage decodeImage(String resourcePath) {
+                if (FRIEND_FILL.equals(resourcePath)) {
+                    decodes.incrementAndGet();
+                    return null;
+                }
+                return super.decodeImage(resourcePath);
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> renderer.createIcon(FRIEND, null))
+                    .isInstanceOf(MissingComponentException.class);
+        }
+        assertThat(decodes.get()).isEqualTo(1);
+        assertThat(renderer.getMissingComponentCacheStats().getSize()).isEqualTo(1L);
+    }
+}
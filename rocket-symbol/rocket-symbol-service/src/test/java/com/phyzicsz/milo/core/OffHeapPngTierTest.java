@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.RocketSymbolService;
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.render.RenderConfiguration;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class OffHeapPngTierTest {
+
+    private static final long OFF_HEAP_BYTES = 2 * 1024 * 1024;
+
+    private static final List<String> FRIEND = Arrays.asList(
+            "SFPP------*****",
+            "SFPPS-----*****",
+            "SFAPMFKB--*****",
+            "SFGPUUSO--*****");
+
+    public OffHeapPngTierTest() {
+    }
+
+    @Test
+    public void testImagesStayOffHeap() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService(new RenderConfiguration()
+                .withOffHeapPngCacheBytes(OFF_HEAP_BYTES));
+
+        for (String symbolCode : FRIEND) {
+            assertThat(instance.asPng(symbolCode)).isEqualTo(expected(symbolCode));
+        }
+        CacheStats rendered = instance.getPngCacheStats();
+        assertThat(rendered.getLoadCount()).isEqualTo((long) FRIEND.size());
+        assertThat(rendered.getSize()).isEqualTo(0L);
+
+        // Repeated requests are served from the off-heap tier: nothing is loaded or copied to the heap cache.
+        for (int round = 0; round < 3; round++) {
+            for (String symbolCode : FRIEND) {
+                assertThat(instance.asPng(symbolCode)).isEqualTo(expected(symbolCode));
+            }
+        }
+        CacheStats served = instance.getPngCacheStats();
+        assertThat(served.getLoadCount()).isEqualTo((long) FRIEND.size());
+        assertThat(served.getSize()).isEqualTo(0L);
+        assertThat(served.getEvictionCount()).isEqualTo(0L);
+        assertThat(instance.getOffHeapPngCacheStats().getHitCount()).isEqualTo(3L * FRIEND.size());
+    }
+
+    @Test
+    public void testSnapshotIncludesOffHeapImages() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService(new RenderConfiguration()
+                .withOffHeapPngCacheBytes(OFF_HEAP_BYTES));
+        for (String symbolCode : FRIEND) {
+            instance.asPng(symbolCode);
+        }
+        long hits = instance.getOffHeapPngCacheStats().getHitCount();
+
+        assertThat(instance.takeSnapshot().getEntries()).hasSize(FRIEND.size());
+        assertThat(instance.getOffHeapPngCacheStats().getHitCount()).isEqualTo(hits);
+    }
+
+    private static byte[] expected(String symbolCode) throws IOException {
+        Path testFile = Paths.get("src", "test", "resources", "2525", "friend", symbolCode + ".png");
+        return Files.readAllBytes(testFile);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.cache.PersistentSymbolStore;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class PersistentSymbolStoreTest {
+
+    private static final long CAPACITY = 1024 * 1024;
+    private static final long VERSION = 0x1234L;
+
+    private Path dir;
+    private Path segment;
+
+    public PersistentSymbolStoreTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rocket-symbol");
+        segment = dir.resolve("png.seg");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReopenWithIndex() throws IOException {
+        try (PersistentSymbolStore store = PersistentSymbolStore.open("test", segment, CAPACITY, VERSION)) {
+            assertThat(store.put("a", bytes("alpha"))).isTrue();
+            assertThat(store.put("b", bytes("bravo"))).isTrue();
+        }
+        assertThat(Files.exists(dir.resolve("png.seg.idx"))).isTrue();
+
+        try (PersistentSymbolStore store = PersistentSymbolStore.open("test", segment, CAPACITY, VERSION)) {
+            assertThat(store.size()).isEqualTo(2L);
+            assertThat(store.get("a")).isEqualTo(bytes("alpha"));
+            assertThat(store.get("b")).isEqualTo(bytes("bravo"));
+            assertThat(store.get("c")).isNull();
+        }
+    }
+
+    @Test
+    public void testRecoverRecordsPastIndex() throws IOException {
+        PersistentSymbolStore first = PersistentSymbolStore.open("test", segment, CAPACITY, VERSION);
+        first.put("a", bytes("alpha"));
+        first.flush();
+        first.put("b", bytes("bravo"));
+
+        // The second record was never indexed, as if the process had died.
+        try (PersistentSymbolStore store = PersistentSymbolStore.open("test", segment, CAPACITY, VERSION)) {
+            assertThat(store.size()).isEqualTo(2L);
+            assertThat(store.get("b")).isEqualTo(bytes("bravo"));
+            assertThat(store.put("c", bytes("charlie"))).isTrue();
+            assertThat(store.get("c")).isEqualTo(bytes("charlie"));
+        }
+    }
+
+    @Test
+    public void testAssetVersionChangeDiscardsEntries() throws IOException {
+        try (PersistentSymbolStore store = PersistentSymbolStore.open("test", segment, CAPACITY, VERSION)) {
+            store.put("a", bytes("alpha"));
+        }
+
+        try (PersistentSymbolStore store = PersistentSymbolStore.open("test", segment, CAPACITY, VERSION + 1)) {
+            assertThat(store.size()).isEqualTo(0L);
+            assertThat(store.get("a")).isNull();
+        }
+    }
+
+    @Test
+    public void testFullSegmentRejectsEntries() throws IOException {
+        try (PersistentSymbolStore store = PersistentSymbolStore.open("test", segment, 256, VERSION)) {
+            assertThat(store.put("a", new byte[128])).isTrue();
+            assertThat(store.put("b", new byte[128])).isFalse();
+            assertThat(store.get("b")).isNull();
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
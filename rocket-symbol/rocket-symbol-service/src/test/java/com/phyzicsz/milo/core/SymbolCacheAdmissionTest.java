@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays a synthetic request trace against an LRU cache and a cache with
+ * frequency-based admission. The trace mixes a skewed stream over a fixed set
+ * of symbol codes with bursts of codes that are requested only once.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class SymbolCacheAdmissionTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(SymbolCacheAdmissionTest.class);
+
+    private static final int CACHE_ENTRIES = 500;
+    private static final int POPULAR_CODES = 2_000;
+    private static final int ROUNDS = 20;
+    private static final int SKEWED_REQUESTS = 10_000;
+    private static final int BURST_REQUESTS = 2_000;
+    private static final int IMAGE_BYTES = 64 * 1024;
+
+    public SymbolCacheAdmissionTest() {
+    }
+
+    @Test
+    public void testAdmissionBeatsLruOnScanBursts() {
+        String[] trace = trace(new Random(2525));
+
+        CacheStats lru = replay(new SymbolCache<>("lru", Long.MAX_VALUE, CACHE_ENTRIES, (k, v) -> 1, false), trace);
+        CacheStats tinyLfu = replay(new SymbolCache<>("tinyLfu", Long.MAX_VALUE, CACHE_ENTRIES, (k, v) -> 1, true),
+                trace);
+
+        logger.info("{}", lru);
+        logger.info("{}", tinyLfu);
+        assertThat(tinyLfu.getHitRate()).isGreaterThan(lru.getHitRate() + 0.05);
+    }
+
+    @Test
+    public void testNewPopularKeyIsAdmitted() {
+        SymbolCache<String, String> cache = new SymbolCache<>("tinyLfu", Long.MAX_VALUE, 16, (k, v) -> 1, true);
+        for (int i = 0; i < 16; i++) {
+            request(cache, "old-" + i);
+        }
+
+        // A key requested repeatedly wins against the idle entries.
+        for (int i = 0; i < 4; i++) {
+            request(cache, "new");
+        }
+        assertThat(cache.getIfPresent("new")).isEqualTo("new");
+        assertThat(cache.size()).isLessThanOrEqualTo(16L);
+    }
+
+    @Test
+    public void testWindowHoldsHeavyEntries() {
+        // Entries as heavy as a decoded symbol, far more than a hundredth of a segment.
+        long maximumWeight = 256L * IMAGE_BYTES;
+        SymbolCache<String, byte[]> cache = new SymbolCache<>("images", maximumWeight, Long.MAX_VALUE,
+                (k, v) -> v.length, true);
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 512; i++) {
+                requestImage(cache, "popular-" + i);
+            }
+        }
+        assertThat(cache.weight()).isLessThanOrEqualTo(maximumWeight);
+
+        // A new entry is kept long enough to be requested again, even though every entry it would evict is more
+        // popular.
+        for (int i = 0; i < 16; i++) {
+            String key = "new-" + i;
+            requestImage(cache, key);
+            assertThat(cache.getIfPresent(key)).isNotNull();
+            assertThat(cache.weight()).isLessThanOrEqualTo(maximumWeight);
+        }
+    }
+
+    private static String[] trace(Random random) {
+        double[] cdf = new double[POPULAR_CODES];
+        double sum = 0;
+        for (int i = 0; i < POPULAR_CODES; i++) {
+            sum += 1.0 / (i + 1);
+            cdf[i] = sum;
+        }
+
+        String[] trace = new String[ROUNDS * (SKEWED_REQUESTS + BURST_REQUESTS)];
+        int n = 0;
+        int oneOff = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < SKEWED_REQUESTS; i++) {
+                double u = random.nextDouble() * sum;
+                int lo = 0;
+                int hi = POPULAR_CODES - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (cdf[mid] < u) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                trace[n++] = String.format("SFGP%011d", lo);
+            }
+            for (int i = 0; i < BURST_REQUESTS; i++) {
+                trace[n++] = String.format("SHGX%011d", oneOff++);
+            }
+        }
+        return trace;
+    }
+
+    private static CacheStats replay(SymbolCache<String, String> cache, String[] trace) {
+        for (String key : trace) {
+            request(cache, key);
+        }
+        return cache.stats();
+    }
+
+    private static void requestImage(SymbolCache<String, byte[]> cache, String key) {
+        if (cache.getIfPresent(key) == null) {
+            cache.put(key, new byte[IMAGE_BYTES]);
+        }
+    }
+
+    private static void request(SymbolCache<String, String> cache, String key) {
+        if (cache.getIfPresent(key) == null) {
+            cache.put(key, key);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.RocketSymbolService;
+import com.phyzicsz.rocket.symbol.cache.CacheStats;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class SymbolETagTest {
+
+    private static final String FRIEND_UNIT = "SFGPUUSO--*****";
+    private static final String FRIEND_AIR = "SFAPMFKB--*****";
+
+    public SymbolETagTest() {
+    }
+
+    @Test
+    public void testETagIdentifiesImage() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService();
+
+        String eTag = instance.getETag(FRIEND_UNIT);
+        assertThat(eTag).startsWith("\"");
+        assertThat(eTag.length()).isEqualTo(34);
+        assertThat(instance.getETag(FRIEND_UNIT)).isEqualTo(eTag);
+        assertThat(new RocketSymbolService().getETag(FRIEND_UNIT)).isEqualTo(eTag);
+
+        // The country code does not change the image, so it does not change the tag either.
+        assertThat(instance.getETag("SFGPUUSO--**US*")).isEqualTo(eTag);
+        assertThat(instance.getETag(FRIEND_AIR)).isNotEqualTo(eTag);
+    }
+
+    @Test
+    public void testETagIsCached() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService();
+        for (int i = 0; i < 3; i++) {
+            instance.getETag(FRIEND_UNIT);
+        }
+
+        CacheStats eTags = stats(instance, "eTags");
+        assertThat(eTags.getHitCount()).isEqualTo(2L);
+        assertThat(eTags.getSize()).isEqualTo(1L);
+        assertThat(stats(instance, "storageKeys").getSize()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService();
+        String eTag = instance.getETag(FRIEND_UNIT);
+        String other = instance.getETag(FRIEND_AIR);
+
+        assertThat(instance.notModified(FRIEND_UNIT, null)).isFalse();
+        assertThat(instance.notModified(FRIEND_UNIT, eTag)).isTrue();
+        assertThat(instance.notModified(FRIEND_UNIT, other)).isFalse();
+        assertThat(instance.notModified(FRIEND_UNIT, "\"" + eTag.substring(2))).isFalse();
+    }
+
+    @Test
+    public void testNotModifiedWildcard() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService();
+
+        assertThat(instance.notModified(FRIEND_UNIT, "*")).isTrue();
+        assertThat(instance.notModified(FRIEND_UNIT, " * ")).isTrue();
+    }
+
+    @Test
+    public void testNotModifiedTagList() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService();
+        String eTag = instance.getETag(FRIEND_UNIT);
+        String other = instance.getETag(FRIEND_AIR);
+
+        assertThat(instance.notModified(FRIEND_UNIT, other + ", " + eTag)).isTrue();
+        assertThat(instance.notModified(FRIEND_UNIT, eTag + "," + other)).isTrue();
+        assertThat(instance.notModified(FRIEND_UNIT, "\"a,b\", " + eTag)).isTrue();
+        assertThat(instance.notModified(FRIEND_UNIT, other + ", \"0\"")).isFalse();
+
+        // The header uses the weak comparison, so a weak tag with the same value matches.
+        assertThat(instance.notModified(FRIEND_UNIT, "W/" + eTag)).isTrue();
+        assertThat(instance.notModified(FRIEND_UNIT, "W/" + other + ", W/" + eTag)).isTrue();
+
+        // A malformed list matches nothing.
+        assertThat(instance.notModified(FRIEND_UNIT, eTag.substring(1))).isFalse();
+        assertThat(instance.notModified(FRIEND_UNIT, other + ", " + eTag.substring(0, eTag.length() - 1))).isFalse();
+    }
+
+    private static CacheStats stats(RocketSymbolService instance, String name) {
+        for (CacheStats stats : instance.getCacheStats()) {
+            if (stats.getName().equals(name)) {
+                return stats;
+            }
+        }
+        throw new AssertionError("no cache named " + name);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.RocketSymbolService;
+import com.phyzicsz.rocket.symbol.SymbolSnapshot;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class SymbolSnapshotTest {
+
+    private static final String STALE = "SFPP------*****";
+
+    private static final List<String> FRIEND = Arrays.asList(
+            STALE,
+            "SFPPS-----*****",
+            "SFAPMFKB--*****",
+            "SFGPUUSO--*****");
+
+    public SymbolSnapshotTest() {
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        SymbolSnapshot snapshot = takeSnapshot();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out);
+        SymbolSnapshot copy = SymbolSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(copy.getAssetVersion()).isEqualTo(snapshot.getAssetVersion());
+        assertThat(copy.getEntries()).hasSize(snapshot.getEntries().size());
+        for (int i = 0; i < snapshot.getEntries().size(); i++) {
+            SymbolSnapshot.Entry expected = snapshot.getEntries().get(i);
+            SymbolSnapshot.Entry actual = copy.getEntries().get(i);
+            assertThat(actual.getStorageKey()).isEqualTo(expected.getStorageKey());
+            assertThat(actual.getSymbols()).isEqualTo(expected.getSymbols());
+            assertThat(actual.getPng()).isEqualTo(expected.getPng());
+        }
+    }
+
+    @Test
+    public void testImportSkipsStaleImages() throws IOException {
+        SymbolSnapshot snapshot = takeSnapshot();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out);
+
+        RocketSymbolService instance = new RocketSymbolService();
+        int loaded = instance.importSnapshot(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(loaded).isEqualTo(FRIEND.size() - 1);
+
+        // Importing resolves every symbol code without counting it as a request.
+        assertThat(instance.getTopSymbols(FRIEND.size())).isEmpty();
+
+        for (String symbolCode : FRIEND) {
+            instance.asPng(symbolCode);
+        }
+        assertThat(instance.getPngCacheStats().getLoadCount()).isEqualTo(1L);
+        assertThat(instance.getTopSymbols(FRIEND.size())).hasSize(FRIEND.size());
+    }
+
+    /**
+     * Renders the test symbols and takes a snapshot in which the image of
+     * {@link #STALE} was drawn from other assets.
+     */
+    private static SymbolSnapshot takeSnapshot() throws IOException {
+        RocketSymbolService instance = new RocketSymbolService();
+        for (String symbolCode : FRIEND) {
+            instance.asPng(symbolCode);
+        }
+        SymbolSnapshot snapshot = instance.takeSnapshot();
+        assertThat(snapshot.getEntries()).hasSize(FRIEND.size());
+
+        List<SymbolSnapshot.Entry> entries = new ArrayList<>();
+        for (SymbolSnapshot.Entry entry : snapshot.getEntries()) {
+            // Symbol keys normalize the fields the renderer ignores, such as the country code.
+            if (entry.getSymbols().get(0).getSidc().startsWith(STALE.substring(0, 10))) {
+                String storageKey = entry.getStorageKey();
+                entry = new SymbolSnapshot.Entry(storageKey.substring(0, storageKey.lastIndexOf('@') + 1) + "0",
+                        entry.getSymbols(), entry.getPng());
+            }
+            entries.add(entry);
+        }
+        return new SymbolSnapshot(snapshot.getAssetVersion(), entries);
+    }
+}
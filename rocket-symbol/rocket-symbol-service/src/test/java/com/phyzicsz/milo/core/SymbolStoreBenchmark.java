@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.cache.OffHeapSymbolStore;
+import com.phyzicsz.rocket.symbol.cache.SymbolCache;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the on-heap PNG cache with the off-heap slab store. Run manually;
+ * results are logged.
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class SymbolStoreBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(SymbolStoreBenchmark.class);
+
+    private static final int ENTRIES = 40_000;
+    private static final int LOOKUPS = 2_000_000;
+    private static final long CAPACITY = 256L * 1024 * 1024;
+
+    public SymbolStoreBenchmark() {
+    }
+
+    @Test
+    @Disabled
+    public void compareOnHeapAndOffHeap() throws IOException {
+        String[] keys = new String[ENTRIES];
+        byte[][] values = new byte[ENTRIES][];
+        Random random = new Random(2525);
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = String.format("fills/tacsym/-f-p-----------.png#ff80e0ff|icons/war/%08d.png", i);
+            values[i] = new byte[2048 + random.nextInt(4096)];
+            random.nextBytes(values[i]);
+        }
+
+        SymbolCache<String, byte[]> onHeap = new SymbolCache<>("onHeap", CAPACITY, (k, v) -> v.length);
+        OffHeapSymbolStore offHeap = new OffHeapSymbolStore("offHeap", CAPACITY, 1024 * 1024);
+        for (int i = 0; i < ENTRIES; i++) {
+            onHeap.put(keys[i], values[i]);
+            offHeap.put(keys[i], values[i]);
+        }
+        values = null;
+
+        NullChannel channel = new NullChannel();
+        for (int round = 0; round < 3; round++) {
+            long gcBefore = gcCount();
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                byte[] bytes = onHeap.getIfPresent(keys[(int) ((i * 7919L) % ENTRIES)]);
+                channel.write(ByteBuffer.wrap(bytes));
+            }
+            long onHeapNanos = System.nanoTime() - start;
+            long onHeapGcs = gcCount() - gcBefore;
+            long onHeapBytes = channel.reset();
+
+            gcBefore = gcCount();
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                offHeap.transferTo(keys[(int) ((i * 7919L) % ENTRIES)], channel);
+            }
+            long offHeapNanos = System.nanoTime() - start;
+            long offHeapGcs = gcCount() - gcBefore;
+            long offHeapBytes = channel.reset();
+            assertThat(offHeapBytes).isEqualTo(onHeapBytes);
+
+            logger.info("round {}: on-heap {} ns/lookup ({} GCs), off-heap {} ns/lookup ({} GCs)", round,
+                    onHeapNanos / LOOKUPS, onHeapGcs, offHeapNanos / LOOKUPS, offHeapGcs);
+        }
+
+        logger.info("{}", onHeap.stats());
+        logger.info("{}", offHeap.stats());
+        assertThat(offHeap.size()).isEqualTo((long) ENTRIES);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static final class NullChannel implements WritableByteChannel {
+
+        private long bytes;
+
+        long reset() {
+            long n = bytes;
+            bytes = 0;
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 phyzicsz <phyzics.z@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phyzicsz.milo.core;
+
+import com.phyzicsz.rocket.symbol.RocketSymbolService;
+import com.phyzicsz.rocket.symbol.WarmupFile;
+import com.phyzicsz.rocket.symbol.common.SymbolServiceProperties;
+import com.phyzicsz.rocket.symbol.render.RenderConfiguration;
+import com.phyzicsz.rocket.symbol.render.SymbolKey;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author phyzicsz <phyzics.z@gmail.com>
+ */
+public class WarmupFileTest {
+
+    private static final String FRIEND_UNIT = "SFGPUCI----D---";
+    private static final String FRIEND_AIR = "SFAPMFKB-------";
+
+    private Path dir;
+
+    public WarmupFileTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rocket-symbol");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        Path file = dir.resolve("warmup.txt");
+        Files.write(file, Arrays.asList(
+                "# friendly units",
+                "",
+                FRIEND_AIR,
+                FRIEND_UNIT + "  20",
+                FRIEND_UNIT + ";nofill;color=ff00ff00, 30",
+                FRIEND_AIR + " many",
+                FRIEND_UNIT + ";nofill;color=ff00ff00 5",
+                FRIEND_UNIT + ";sparkles 100"));
+
+        Map<SymbolKey, Long> symbols = WarmupFile.read(file);
+        SymbolKey colored = key(FRIEND_UNIT, false, Color.GREEN);
+        assertThat(new ArrayList<>(symbols.keySet()))
+                .containsExactly(colored, key(FRIEND_UNIT, true, null), key(FRIEND_AIR, true, null));
+        assertThat(symbols.get(colored)).isEqualTo(35L);
+        assertThat(symbols.get(key(FRIEND_AIR, true, null))).isEqualTo(2L);
+    }
+
+    @Test
+    public void testWriteThenRead() throws IOException {
+        Path file = dir.resolve("warmup.txt");
+        SymbolServiceProperties noIcon = new SymbolServiceProperties();
+        noIcon.put(SymbolServiceProperties.SHOW_ICON, false);
+        noIcon.put(SymbolServiceProperties.SHOW_FRAME, false);
+        List<Map.Entry<SymbolKey, Long>> entries = Arrays.asList(
+                Map.entry(key(FRIEND_UNIT, true, null), 9L),
+                Map.entry(key(FRIEND_UNIT, false, new Color(0x10, 0x20, 0x30, 0x40)), 7L),
+                Map.entry(SymbolKey.of(FRIEND_AIR, noIcon), 3L));
+
+        WarmupFile.write(file, entries);
+        assertThat(Files.readAllLines(file).get(1)).isEqualTo(FRIEND_UNIT + " 9");
+        assertThat(new ArrayList<>(WarmupFile.read(file).entrySet())).isEqualTo(entries);
+    }
+
+    @Test
+    public void testWarmUpWithRecordedOptions() throws IOException {
+        Path hotSet = dir.resolve("hotset.txt");
+        RocketSymbolService recording = new RocketSymbolService(new RenderConfiguration().withHotSetPath(hotSet))
+                .withShowFill(false)
+                .withFillColor(Color.GREEN);
+        byte[] expected = recording.asPng(FRIEND_UNIT);
+        recording.close();
+
+        // The warm-up runs before the service is configured, but renders the symbol as it was requested.
+        RocketSymbolService warmed = new RocketSymbolService(new RenderConfiguration().withWarmupPath(hotSet));
+        assertThat(warmed.getPngCacheStats().getSize()).isEqualTo(1L);
+        warmed.withShowFill(false).withFillColor(Color.GREEN);
+        assertThat(warmed.asPng(FRIEND_UNIT)).isEqualTo(expected);
+        assertThat(warmed.getPngCacheStats().getHitCount()).isEqualTo(1L);
+        assertThat(warmed.getPngCacheStats().getSize()).isEqualTo(1L);
+    }
+
+    private static SymbolKey key(String sidc, boolean showFill, Color color) {
+        SymbolServiceProperties params = new SymbolServiceProperties();
+        params.put(SymbolServiceProperties.SHOW_FILL, showFill);
+        if (color != null) {
+            params.put(SymbolServiceProperties.COLOR, color);
+        }
+        return SymbolKey.of(sidc, params);
+    }
+}